@@ -0,0 +1,153 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.conf.Backup;
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.conf.Copy;
+import com.datamaio.scd4j.conf.Hooks;
+import com.datamaio.scd4j.conf.Install;
+import com.datamaio.scd4j.conf.Settings;
+import com.datamaio.scd4j.conf.Template;
+import com.datamaio.scd4j.util.BackupHelper;
+import com.datamaio.scd4j.util.io.AtomicWriter.Fsync;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * Shows the heap retained while a module is installed by
+ * {@link EnvConfigurator#execute()}, indexed in memory and in streaming
+ * mode (see {@link Copy}), as its number of files grows. The heap is
+ * measured right after a full GC, when the last file is copied, so it
+ * includes the module index, the applied-state manifest, the workers and
+ * everything else the copy pipeline keeps. It is shown relative to the heap
+ * used at start up, so it also includes a constant amount taken by the
+ * classes (and their caches) loaded by the first installation.
+ * <p>
+ * Run it with <code>./gradlew heapBenchmark</code>. Other file counts may
+ * be given as arguments. Files are installed into the temporary directory.
+ * 
+ * @author Fernando Rubbo
+ */
+public class CopyHeapBenchmark {
+	private static final int FILES_PER_DIR = 1000;
+	private static final long KB = 1024;
+	
+	public static void main(String[] args) throws Exception {
+		int[] counts = {10_000, 100_000, 1_000_000};
+		if(args.length > 0) {
+			counts = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				counts[i] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		final long baseline = used();
+		System.out.println("files\tin memory (KB)\tstreaming (KB)");
+		for (int count : counts) {
+			Path root = Files.createTempDirectory("scd4j-heap");
+			try {
+				Path module = createModule(root, count);
+				long memory = retained(module, count, false) - baseline;
+				long streaming = retained(module, count, true) - baseline;
+				System.out.println(String.format("%d\t%d\t%d", count, memory / KB, streaming / KB));
+			} finally {
+				FileUtils.delete(root);
+			}
+		}
+	}
+	
+	/** 
+	 * Module like <code>&lt;root&gt;/@target@/dN/fN.txt</code>, with empty files. 
+	 * In Linux, the module directory tree is the absolute path of the target
+	 */
+	private static Path createModule(Path root, int count) throws IOException {
+		Path module = root.resolve("modules/heap");
+		Path targets = module.resolve(Paths.get("/").relativize(root)).resolve("@target@");
+		Path dir = null;
+		for (int i = 0; i < count; i++) {
+			if(i % FILES_PER_DIR == 0) {
+				dir = Files.createDirectories(targets.resolve("d" + i / FILES_PER_DIR));
+			}
+			Files.createFile(dir.resolve("f" + i + ".txt"));
+		}
+		return module;
+	}
+	
+	/** Heap used right after the last file is copied, including the classes loaded by the first installation */
+	private static long retained(Path module, int count, boolean streaming) {
+		Map<String, Object> props = new HashMap<>();
+		props.put("target", streaming ? "streaming" : "memory");
+		Copy copy = new Copy(Runtime.getRuntime().availableProcessors(), FileUtils.TRANSFER_THRESHOLD, Fsync.NONE, streaming);
+		Settings settings = new Settings(new Template(), new Hooks(), copy, new Backup());
+		Configuration conf = new Configuration(new Install(module, props), settings, new HashMap<>());
+		
+		Measured configurator = new Measured(conf, count);
+		Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).setLevel(Level.WARNING);
+		configurator.execute();
+		return configurator.retained;
+	}
+	
+	private static long used() {
+		System.gc();
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+	
+	/** Measures the heap when the last file is copied (i.e. when its target is backed up) */
+	private static final class Measured extends EnvConfigurator {
+		private final int count;
+		private volatile long retained;
+		
+		Measured(Configuration conf, int count) {
+			super(conf);
+			this.count = count;
+		}
+		
+		@Override
+		BackupHelper buildBackupHelper(Configuration conf) {
+			return new BackupHelper(conf) {
+				private final AtomicInteger copied = new AtomicInteger();
+				
+				@Override
+				public void backupFile(Path file, boolean replaced, String hash) {
+					super.backupFile(file, replaced, hash);
+					if(copied.incrementAndGet() == count) {
+						retained = used();
+					}
+				}
+			};
+		}
+	}
+}
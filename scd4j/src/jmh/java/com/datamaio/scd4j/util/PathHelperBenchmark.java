@@ -0,0 +1,120 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Resolves the <code>@var@</code> placeholders of all paths of a module
+ * like the one of the WildflyClusterInstallation example (i.e.
+ * <code>@wildflyDir@/standalone-@httpPort@/...</code>), with
+ * {@link PathHelper#replaceVars(String)} and with the regular expression it
+ * used before.
+ * <p>
+ * Run it with <code>./gradlew jmh</code>.
+ * 
+ * @author Fernando Rubbo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathHelperBenchmark {
+	private static final int FILES_PER_DIR = 100;
+	
+	@Param({"1000", "10000"})
+	public int files;
+	
+	private Map<String, Object> properties;
+	private List<String> paths;
+	private PathHelper helper;
+	
+	@Setup
+	public void setUp() {
+		properties = new HashMap<>();
+		properties.put("wildflyDir", "/opt/wildfly-8.1.0.Final");
+		properties.put("httpPort", 8080);
+		
+		paths = new ArrayList<>();
+		paths.add("etc/default/wildfly-@httpPort@.tmpl");
+		paths.add("@wildflyDir@/bin/init.d/wildfly-init-debian-@httpPort@.sh.tmpl");
+		paths.add("@wildflyDir@/standalone-@httpPort@/configuration/standalone.xml.tmpl");
+		paths.add("@wildflyDir@/standalone-@httpPort@/configuration/mgmt-users.properties.tmpl");
+		for (int i = paths.size(); i < files; i++) {
+			paths.add("@wildflyDir@/standalone-@httpPort@/deployments/d" + (i / FILES_PER_DIR) + "/app-" + i + ".war");
+		}
+		
+		helper = new PathHelper(properties, null);
+	}
+	
+	@Benchmark
+	public void resolver(Blackhole bh) {
+		for (String path : paths) {
+			bh.consume(helper.replaceVars(path));
+		}
+	}
+	
+	@Benchmark
+	public void regex(Blackhole bh) {
+		for (String path : paths) {
+			bh.consume(regex(path));
+		}
+	}
+	
+	/** How variables were replaced before */
+	private String regex(String srcPath) {
+		final Pattern p = Pattern.compile("@([^@])*@");
+		final Matcher m = p.matcher(srcPath);
+		while(m.find()) {
+			final String key = m.group();
+			final Object value = properties.get(key.replaceAll("@", ""));
+			if(value!=null)
+				srcPath = srcPath.replace(key, value.toString());
+			else 
+				throw new IllegalStateException("Variable " + key.replaceAll("@", "") + " was not declared.");
+		}
+		return srcPath;
+	}
+}
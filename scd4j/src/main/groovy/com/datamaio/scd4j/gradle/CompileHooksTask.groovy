@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.gradle
+
+import static com.datamaio.scd4j.conf.Configuration.MODULES_FOLDER
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputDirectory
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
+
+import com.datamaio.scd4j.hooks.HookCache
+import com.datamaio.scd4j.hooks.HookCompiler
+import com.datamaio.scd4j.hooks.HookRuntime
+import com.datamaio.scd4j.util.io.FileUtils
+
+/**
+ * Compiles all hooks (i.e. <code>Module.hook</code> and <code>*.hook</code>) of all modules
+ * at build time. The bytecode is shipped within the pack, so that target hosts do not need
+ * to compile them during the installation and compilation errors are reported before deploy.
+ *
+ * @author Fernando Rubbo
+ */
+class CompileHooksTask extends DefaultTask {
+	
+	@InputDirectory
+	File getModulesDir() {
+		return project.file(MODULES_FOLDER)
+	}
+	
+	@Input
+	boolean isCompileStatic() {
+		return project.scd4j.settings.hooks.compileStatic
+	}
+	
+	@OutputDirectory
+	File getOutputDir() {
+		return new File(project.buildDir, "hooks")
+	}
+	
+	@TaskAction
+    def action() {
+		FileUtils.delete(outputDir.toPath())
+		def runtime = new HookRuntime(new HookCache(outputDir.toPath()), isCompileStatic())
+		try {
+			def compiler = new HookCompiler(runtime)
+			def count = 0
+			modulesDir.eachDir { module ->
+				count += compiler.compile(module.toPath()).size()
+			}
+			println "$count hook(s) compiled into $outputDir"
+		} finally {
+			runtime.close()
+		}
+    }
+}
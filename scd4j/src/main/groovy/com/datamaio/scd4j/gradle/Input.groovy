@@ -27,7 +27,16 @@ import org.apache.commons.configuration.PropertiesConfiguration
 
 import static com.datamaio.scd4j.conf.Configuration.MODULES_FOLDER;
 import static com.datamaio.scd4j.conf.Configuration.CONFIG_FOLDER;
+import com.datamaio.scd4j.conf.Backup
+import com.datamaio.scd4j.conf.Configuration
+import com.datamaio.scd4j.conf.Copy
+import com.datamaio.scd4j.conf.Env
+import com.datamaio.scd4j.conf.Hooks
+import com.datamaio.scd4j.conf.Install
+import com.datamaio.scd4j.conf.Settings
+import com.datamaio.scd4j.conf.Template
 import com.datamaio.scd4j.util.Encryptor
+import com.datamaio.scd4j.util.io.AtomicWriter.Fsync
 
 
 /**
@@ -55,6 +64,38 @@ class Input {
 		return result;
 	}
 	
+	static Configuration configuration(sett, envs, module, config, dependencies) {
+		def env = new Env(envs.production, envs.staging, envs.testing)
+		Install install = new Install(module.toPath(), config.toPath(), env);
+		Settings settings = new Settings();
+		settings.setTemplate(new Template(sett.template.engine));
+		settings.setHooks(new Hooks(sett.hooks.compileStatic));
+		settings.setCopy(new Copy(sett.copy.parallelism, sett.copy.transferThreshold, Fsync.valueOf(sett.copy.fsync.toUpperCase()), sett.copy.streaming));
+		settings.setBackup(new Backup(sett.backup.compress, sett.backup.keep, sett.backup.maxAge, sett.backup.maxSize));
+		return new Configuration(install, settings, dependencies);
+	}
+	
+	static Map dependencies(project){
+		def map = [:]
+		def set = []
+		project.configurations.scd4j.resolvedConfiguration.firstLevelModuleDependencies?.each {d ->
+			d.moduleArtifacts.each { a ->
+				def key = "${d.moduleGroup}:${d.moduleName}:${d.moduleVersion}@${a.extension}"
+				def file = a.file			
+				map.putAt(key, file.toPath())
+				set.add(file)
+			}
+		}
+		
+		project.configurations.scd4j.files?.each { File f ->
+			if(!set.contains(f)){
+				map.putAt(f.name, f.toPath())
+			}
+		}
+	
+		return map
+	}
+	
 	static boolean validate(modules, config) {
 		return validateModules(modules) && validateConfig(config);
 	}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.gradle
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.TaskAction
+
+import com.datamaio.scd4j.Plan
+import com.datamaio.scd4j.Planner
+
+/**
+ * Task used to show what {@link Scd4jTask} would change, without changing
+ * anything at all: no file is written, no backup is taken and no hook is
+ * executed. Files marked with <code>*</code> have hooks, whose
+ * <code>pre{..}</code> may still skip them.
+ *
+ * @author Fernando Rubbo
+ */
+class PlanTask extends DefaultTask {
+	
+	@TaskAction
+	def action() {
+		def settings = project.scd4j.settings;
+		def env = project.scd4j.install.env
+		def config = Input.config(project);
+		def modules = Input.modules(project)
+		
+		println "==================== Planning scd4j ============================="
+		println "CONFIG FILE   : $config"
+		println "MODULE DIRS   : $modules"
+		println "=================================================================="
+		
+		if( Input.validate(modules, config) ) {
+			def dependencies = Input.dependencies(project)
+			for(module in modules) {
+				Plan plan = new Planner(Input.configuration(settings, env, module, config, dependencies)).plan()
+				println "====== Module $module ======"
+				print plan.toText()
+			}
+		}
+	}
+}
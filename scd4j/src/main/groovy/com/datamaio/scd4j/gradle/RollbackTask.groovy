@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.gradle
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.TaskAction
+
+import com.datamaio.scd4j.Rollback
+import com.datamaio.scd4j.util.BackupRun
+
+/**
+ * Task used to undo an execution of {@link Scd4jTask}, restoring what it has
+ * replaced or deleted and removing what it has added (see {@link Rollback}).
+ * <p>
+ * By default the last execution of each module is rolled back. Another one
+ * is chosen by its backup timestamp, e.g. <code>./gradlew rollback -Pexecution=20141231235959</code>.
+ * In order to avoid prompting for confirmation use <code>-PassumeYes=true</code>.
+ *
+ * @author Fernando Rubbo
+ */
+class RollbackTask extends DefaultTask {
+	
+	@TaskAction
+	def action() {
+		def settings = project.scd4j.settings;
+		def env = project.scd4j.install.env
+		def config = Input.config(project);
+		def modules = Input.modules(project)
+		def execution = project.hasProperty("execution") ? project.execution : null
+		
+		println "==================== Rolling back scd4j ========================="
+		println "CONFIG FILE   : $config"
+		println "MODULE DIRS   : $modules"
+		println "EXECUTION     : ${execution ?: 'last one'}"
+		println "=================================================================="
+		
+		if( Input.validate(modules, config) ) {
+			def dependencies = Input.dependencies(project)
+			for(module in modules) {
+				Rollback rollback = new Rollback(Input.configuration(settings, env, module, config, dependencies))
+				BackupRun run = rollback.execution(execution)
+				println "====== Module $module ======"
+				if(run == null) {
+					println "No backup found. Available executions: ${rollback.executions()*.dir*.fileName}"
+				} else if(confirm("Restore ${run.dir} (${run.load().size()} entries)")) {
+					rollback.rollback(run)
+				} else {
+					println "=== Rollback aborted! ==="
+				}
+			}
+		}
+	}
+	
+	def confirm(msg) {
+		if(project.hasProperty("assumeYes") && "true".equals(project.assumeYes)) {
+			return true
+		}
+		def console = System.console()
+		if(console == null) {
+			println "No console to confirm. Use -PassumeYes=true"
+			return false
+		}
+		def ok = console.readLine("\n$msg? Type \"yes/y\" to procceed or anything else to abort: ")
+		return "yes".equalsIgnoreCase(ok) || "y".equalsIgnoreCase(ok)
+	}
+}
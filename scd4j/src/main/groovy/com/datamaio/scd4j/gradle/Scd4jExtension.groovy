@@ -23,6 +23,8 @@
  */
 package com.datamaio.scd4j.gradle;
 
+import com.datamaio.scd4j.util.io.FileUtils
+
 /**
  *
  * @author Fernando Rubbo
@@ -82,6 +84,69 @@ class TemplateNestedExtention{
 	}
 }
 
+/**
+ *
+ * @author Fernando Rubbo
+ */
+class HooksNestedExtention{
+	boolean compileStatic = false
+	void compileStatic(boolean cs){
+		compileStatic = cs
+	}
+}
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+class CopyNestedExtention{
+	int parallelism = Runtime.runtime.availableProcessors()
+	long transferThreshold = FileUtils.TRANSFER_THRESHOLD
+	String fsync = "module"
+	boolean streaming = false
+	void parallelism(int p){
+		parallelism = p
+	}
+	void transferThreshold(long bytes){
+		transferThreshold = bytes
+	}
+	/** One of: file, module or none */
+	void fsync(String policy){
+		fsync = policy
+	}
+	/** Walks modules with bounded memory, for modules with too many files to be indexed in memory */
+	void streaming(boolean s){
+		streaming = s
+	}
+}
+
+/**
+ *
+ * @author Fernando Rubbo
+ */
+class BackupNestedExtention{
+	boolean compress = true
+	int keep = 0
+	int maxAge = 0
+	long maxSize = 0
+	/** Compresses backups (the default). Otherwise replaced and deleted targets are hard linked whenever possible */
+	void compress(boolean c){
+		compress = c
+	}
+	/** Number of executions kept for each module and config (0 keeps them all) */
+	void keep(int executions){
+		keep = executions
+	}
+	/** Age (in days) from which executions are not kept (0 keeps them all) */
+	void maxAge(int days){
+		maxAge = days
+	}
+	/** Size (in bytes) of all backups from which the oldest executions are not kept (0 means no limit) */
+	void maxSize(long bytes){
+		maxSize = bytes
+	}
+}
+
 /**
  *
  * @author Fernando Rubbo
@@ -30,6 +30,9 @@ import org.gradle.api.tasks.wrapper.Wrapper
 
 import com.datamaio.scd4j.gradle.util.URLDownloader;
 
+import static com.datamaio.scd4j.conf.Configuration.HOOKS_FOLDER
+import static com.datamaio.scd4j.conf.Configuration.STATE_FOLDER
+
 /**
  *
  * @author Fernando Rubbo
@@ -49,6 +52,9 @@ class Scd4jPlugin implements Plugin<Project> {
         project.scd4j.install.extensions.create("env", EnvNestedExtension)
 		project.scd4j.extensions.create("settings", SettingsNestedExtention)
 		project.scd4j.settings.extensions.create("template", TemplateNestedExtention)		
+		project.scd4j.settings.extensions.create("hooks", HooksNestedExtention)
+		project.scd4j.settings.extensions.create("copy", CopyNestedExtention)
+		project.scd4j.settings.extensions.create("backup", BackupNestedExtention)
 		project.scd4j.settings.extensions.create("linux", LinuxNestedExtention)
 		project.scd4j.settings.extensions.create("windows", WindowsNestedExtention)
 		
@@ -96,11 +102,30 @@ class Scd4jPlugin implements Plugin<Project> {
 			group = "scd4j"
 			description = "Automatically isntall and configure the environment"
 		}
-		project.task('pack', type:Zip) {
+		project.task('plan', type:PlanTask){
+			group = "scd4j"
+			description = "Shows what would be added, modified or deleted, without changing anything"
+		}
+		project.task('watch', type:WatchTask){
+			group = "scd4j"
+			description = "Keeps applying the module files as soon as they change (use -Pdebounce=<millis> to wait more or less)"
+		}
+		project.task('rollback', type:RollbackTask){
+			group = "scd4j"
+			description = "Restores what an execution has replaced or deleted and removes what it has added (use -Pexecution=<timestamp> to choose it)"
+		}
+		project.task('compileHooks', type:CompileHooksTask) {
+			group = "scd4j"
+			description = "Compiles all hooks, so that errors are found at build time and target hosts do not need to compile them"
+		}
+		project.task('pack', type:Zip, dependsOn:'compileHooks') {
 			group = "scd4j"
 			description = "Generates a zip to be installed in another environment. Triggered in the default gradle artifacts generation."
 			from '.'
-			exclude 'build', 'log', 'backup', 'target', ".gradle"
+			exclude 'build', 'log', 'backup', 'target', ".gradle", HOOKS_FOLDER, STATE_FOLDER
+			from(project.compileHooks.outputDir) {
+				into HOOKS_FOLDER
+			}
 		}
 		project.configurations {
 			archives
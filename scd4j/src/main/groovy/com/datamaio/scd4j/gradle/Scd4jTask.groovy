@@ -30,10 +30,7 @@ import org.gradle.api.tasks.TaskAction
 
 import com.datamaio.scd4j.EnvConfigurator
 import com.datamaio.scd4j.conf.Configuration
-import com.datamaio.scd4j.conf.Env
-import com.datamaio.scd4j.conf.Install
-import com.datamaio.scd4j.conf.Settings
-import com.datamaio.scd4j.conf.Template
+import com.datamaio.scd4j.tmpl.TemplateCache
 
 /**
  * Task used to start SCD4J
@@ -102,13 +99,12 @@ class Scd4jTask extends DefaultTask {
     }
 
 	def run(sett, envs, modules, config) {
-		def env = new Env(envs.production, envs.staging, envs.testing)
-		def dependencies = mapDependencies2Path();
+		def dependencies = Input.dependencies(project);
+		// templates used by many modules are compiled only once
+		def templates = new TemplateCache()
 		for(module in modules) {	
-			Install install = new Install(module.toPath(), config.toPath(), env);
-			Settings settings = new Settings();
-			settings.setTemplate(new Template(sett.template.engine));
-			Configuration conf = new Configuration(install, settings, dependencies);
+			Configuration conf = Input.configuration(sett, envs, module, config, dependencies);
+			conf.templateCache = templates
 			new EnvConfigurator(conf).execute();
 		}
 	}
@@ -118,27 +114,6 @@ class Scd4jTask extends DefaultTask {
 		return project.hasProperty("assumeYes") ? "true".equals(project.assumeYes) : false
 	}
 	
-	def mapDependencies2Path(){
-		def map = [:]
-		def set = []
-		project.configurations.scd4j.resolvedConfiguration.firstLevelModuleDependencies?.each {d ->
-			d.moduleArtifacts.each { a ->
-				def key = "${d.moduleGroup}:${d.moduleName}:${d.moduleVersion}@${a.extension}"
-				def file = a.file			
-				map.putAt(key, file.toPath())
-				set.add(file)
-			}
-		}
-		
-		project.configurations.scd4j.files?.each { File f ->
-			if(!set.contains(f)){
-				map.putAt(f.name, f.toPath())
-			}
-		}
-	
-		return map
-	}
-	
 	def getScd4jVersion(project) {
 		def plugin = project.buildscript.configurations.classpath.resolvedConfiguration.firstLevelModuleDependencies?.find({ it.moduleName.equals("scd4j") })
 		if(plugin!=null) {
@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.gradle
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.TaskAction
+
+import com.datamaio.scd4j.EnvConfigurator
+import com.datamaio.scd4j.conf.Configuration
+import com.datamaio.scd4j.tmpl.TemplateCache
+import com.datamaio.scd4j.util.ModuleWatcher
+
+/**
+ * Task used while developing a module: it keeps watching the module
+ * directories and, whenever files change, applies only them again (see
+ * {@link EnvConfigurator#apply(java.util.Collection)}). Changed templates are
+ * merged again and changed files are copied again, each one within its own 
+ * <code>.hook</code>.
+ * <p>
+ * Changes are applied once nothing else has changed for 500 milliseconds,
+ * which can be configured, e.g. <code>./gradlew watch -Pdebounce=1000</code>.
+ * Run <code>./gradlew scd4j</code> first, as deletions, directory hooks and 
+ * <code>Module.hook</code> are not applied by this task.
+ *
+ * @author Fernando Rubbo
+ */
+class WatchTask extends DefaultTask {
+	static final long DEFAULT_DEBOUNCE = 500
+	
+	@TaskAction
+	def action() {
+		def settings = project.scd4j.settings;
+		def env = project.scd4j.install.env
+		def config = Input.config(project);
+		def modules = Input.modules(project)
+		def debounce = project.hasProperty("debounce") ? project.debounce as long : DEFAULT_DEBOUNCE
+		
+		println "==================== Watching scd4j ============================="
+		println "CONFIG FILE   : $config"
+		println "MODULE DIRS   : $modules"
+		println "DEBOUNCE (ms) : $debounce"
+		println "=================================================================="
+		
+		if( Input.validate(modules, config) ) {
+			def dependencies = Input.dependencies(project)
+			def configurators = [:]
+			def templates = new TemplateCache()
+			for(module in modules) {
+				Configuration conf = Input.configuration(settings, env, module, config, dependencies)
+				conf.templateCache = templates
+				configurators[conf.module] = new EnvConfigurator(conf)
+			}
+			
+			ModuleWatcher watcher = new ModuleWatcher(configurators.keySet(), debounce)
+			try {
+				println "Waiting for changes. Press Ctrl+C to stop."
+				while(true) {
+					def changed = watcher.take()
+					configurators.each { module, configurator ->
+						def files = changed.findAll { it.startsWith(module) }
+						if(files) {
+							try {
+								configurator.apply(files)
+							} catch(Exception e) {
+								// keep watching, the next change may fix it
+								println "=== Changes not applied: ${e.message} ==="
+							}
+						}
+					}
+				}
+			} finally {
+				watcher.close()
+			}
+		}
+	}
+}
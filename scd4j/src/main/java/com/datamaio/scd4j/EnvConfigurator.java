@@ -26,31 +26,46 @@ package com.datamaio.scd4j;
 import static com.datamaio.scd4j.conf.Configuration.DELETE_SUFFIX;
 import static com.datamaio.scd4j.conf.Configuration.HOOK_SUFFIX;
 import static com.datamaio.scd4j.conf.Configuration.TEMPLATE_SUFFIX;
+import static com.datamaio.scd4j.hooks.module.ModuleHookEvaluator.MODULE_HOOK;
 import static java.nio.file.Files.exists;
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.datamaio.scd4j.conf.Configuration;
 import com.datamaio.scd4j.hooks.Hook;
+import com.datamaio.scd4j.hooks.HookCompiler;
+import com.datamaio.scd4j.hooks.HookRuntime;
 import com.datamaio.scd4j.hooks.file.FileHookEvaluator;
 import com.datamaio.scd4j.hooks.module.ModuleHookEvaluator;
 import com.datamaio.scd4j.tmpl.TemplateEngine;
 import com.datamaio.scd4j.util.BackupHelper;
 import com.datamaio.scd4j.util.LogHelper;
+import com.datamaio.scd4j.util.Manifest;
+import com.datamaio.scd4j.util.Manifest.Source;
+import com.datamaio.scd4j.util.ModuleIndex;
 import com.datamaio.scd4j.util.PathHelper;
+import com.datamaio.scd4j.util.WorkerPool;
+import com.datamaio.scd4j.util.io.AtomicWriter;
 import com.datamaio.scd4j.util.io.CopyVisitor;
 import com.datamaio.scd4j.util.io.DeleteVisitor;
 import com.datamaio.scd4j.util.io.FileUtils;
+import com.datamaio.scd4j.util.io.HashUtils;
 
 /**
  * This class is the heart of scd4j tool. <br>
@@ -64,11 +79,20 @@ import com.datamaio.scd4j.util.io.FileUtils;
  */
 public class EnvConfigurator {
     private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    /** Target directories kept in streaming mode, so that memory does not grow with the number of directories */
+    static final int STREAMING_TARGET_DIRS = 1024;
 	
 	private final Configuration conf;
 	private final TemplateEngine engine;
 	private final PathHelper pathHelper;
 	private final BackupHelper backupHelper;
+	private ModuleIndex index;
+	private HookRuntime runtime;
+	private Manifest applied;
+	private Manifest applying;
+	private AtomicWriter writer;
+	/** Target directories already verified or created by this run (see {@link CopyVisitor}) */
+	private final Set<Path> targetDirs = ConcurrentHashMap.newKeySet();
 	
 	public EnvConfigurator(Configuration conf) {
 		this.conf = conf;
@@ -102,12 +126,17 @@ public class EnvConfigurator {
 		conf.prettyPrint();
 		Path module = conf.getModule();
 		try {			
-			final ModuleHookEvaluator hook = new ModuleHookEvaluator(conf);
+			// all hooks are compiled before touching any file
+			new HookCompiler(runtime()).compile(module, index().getHooks());
+			
+			final ModuleHookEvaluator hook = new ModuleHookEvaluator(conf, runtime());
 			try{
 				if (hook.pre()) {
 					deleteFiles();
 					copyFiles();
 					hook.post();
+					applying.save(conf.getManifestFile());
+					backupHelper.retain();
 				} else {
 					LOGGER.warning("Module " + module + " was not installed. Check Module.hook!");
 				}
@@ -117,9 +146,127 @@ public class EnvConfigurator {
 		} catch (final Exception e) {
 			LOGGER.log(Level.SEVERE, "Unexpected Error.", e);
 			throw new RuntimeException("Unexpected Error. Cause: " + e.getMessage(), e);
+		} finally {
+			releaseRuntime();
+			backupHelper.close();
+		}
+	}
+	
+	/**
+	 * Applies again only the given files of the module, e.g. the ones that
+	 * have just been edited (see {@link com.datamaio.scd4j.util.ModuleWatcher}).
+	 * Templates are merged and files are copied just like in {@link #execute()},
+	 * each one within its <code>.hook</code>, whenever it exists. Changing a
+	 * <code>.hook</code> applies its file again.
+	 * <p>
+	 * Files that no more exist are ignored, as well as <code>.del</code> files,
+	 * <code>Module.hook</code> and directory hooks, which require a complete 
+	 * execution. A warning is logged for each one of them. All calls of the same instance are backed up as a single 
+	 * execution, so that a rollback undoes all of them at once.
+	 */
+	public void apply(Collection<Path> changed) {
+		final Path module = conf.getModule();
+		final Map<String, Object> properties = conf.getProps();
+		final Set<Path> files = new TreeSet<>();
+		for (Path path : changed) {
+			if(path.equals(module.resolve(MODULE_HOOK))) {
+				LOGGER.warning("Module.hook has changed. Run scd4j in order to apply it!");
+				continue;
+			}
+			if(!path.startsWith(module)) {
+				continue;
+			}
+			String name = path.toString();
+			final boolean hook = name.endsWith(HOOK_SUFFIX);
+			if(hook) {
+				path = Paths.get(name.substring(0, name.length() - HOOK_SUFFIX.length()));
+				name = path.toString();
+			}
+			if(name.endsWith(DELETE_SUFFIX)) {
+				LOGGER.warning(module.relativize(path) + " has changed. Run scd4j in order to delete its file!");
+			} else if(Files.isRegularFile(path)) {
+				files.add(path);
+			} else if(Files.isDirectory(path)) {
+				if(hook) {
+					LOGGER.warning(module.relativize(path) + HOOK_SUFFIX + " has changed. Run scd4j in order to apply it!");
+				}
+			} else {
+				LOGGER.warning(module.relativize(path) + " no more exists. Run scd4j in order to apply it!");
+			}
+		}
+		
+		final Set<Path> hooks = new HashSet<>();
+		for (Path file : files) {
+			Path hook = Paths.get(file + HOOK_SUFFIX);
+			if(exists(hook)) {
+				hooks.add(hook);
+			}
+		}
+		
+		// neither compared with nor recorded in the manifest, as only part of the module is applied
+		applied = Manifest.none();
+		applying = Manifest.none();
+		writer = new AtomicWriter(conf.getCopyFsync(), conf.getCopyTransferThreshold());
+		targetDirs.clear();
+		try {
+			new HookCompiler(runtime()).compile(module, hooks);
+			for (Path source : files) {
+				final Path target = pathHelper.getTarget(source);
+				final FileHookEvaluator hook = FileHookEvaluator.of(source, target, conf, hooks, runtime());
+				try {
+					if(hook.pre()) {
+						if(targetDirs.add(target.getParent())) {
+							createDirectories(target.getParent());
+						}
+						copyOrMerge(source, target, engine, properties, hook);
+						hook.post();
+					}
+				} finally {
+					hook.finish();
+				}
+			}
+			writer.sync();
+		} catch (final Exception e) {
+			LOGGER.log(Level.SEVERE, "Unexpected Error.", e);
+			throw new RuntimeException("Unexpected Error. Cause: " + e.getMessage(), e);
+		} finally {
+			applied = null;
+			releaseRuntime();
+			backupHelper.close();
+		}
+	}
+	
+	/** All hooks of this execution share the same runtime (i.e. class loader) */
+	private HookRuntime runtime() {
+		if(runtime==null) {
+			runtime = new HookRuntime(conf);
+		}
+		return runtime;
+	}
+	
+	/** Releases all hook classes, so that they can be unloaded */
+	private void releaseRuntime() {
+		if(runtime!=null) {
+			runtime.getProfiler().write(conf.getLogFile());
+			runtime.close();
+			runtime = null;
 		}
 	}
 
+	/** 
+	 * The module is walked only once, and both delete and copy phases are
+	 * driven by this in memory index. It also knows all <code>.hook</code>
+	 * files, so files without hooks do not need to touch the file system.
+	 * In streaming mode (see {@link Configuration#isCopyStreaming()}) only 
+	 * the hooks are indexed and each phase walks the module again.
+	 */
+	private ModuleIndex index() {
+		if(index==null) {
+			index = new ModuleIndex(conf.getModule(), pathHelper, conf.isCopyStreaming());
+		}
+		return index;
+	}
+	
 	/**
 	 * Method responsible for deleting files and directories
 	 * <p>
@@ -155,9 +302,7 @@ public class EnvConfigurator {
 	 * {@link Hook#pre()} and {@link Hook#post()}
 	 */
 	protected void deleteFiles() {		
-		Path module = conf.getModule();
-		
-		FileUtils.deleteDir(module, new DeleteVisitor("*" + DELETE_SUFFIX){
+		index().walk(new DeleteVisitor("*" + DELETE_SUFFIX){
 			private FileHookEvaluator hook;
 			
 			@Override 
@@ -166,8 +311,8 @@ public class EnvConfigurator {
 					return false;
 				}
 				
-				final Path target = pathHelper.getTargetWithoutSuffix(source, DELETE_SUFFIX);
-				hook = new FileHookEvaluator(source, target, conf);
+				final Path target = index().get(source).getTarget();
+				hook = FileHookEvaluator.of(source, target, conf, index().getHooks(), runtime());
 
 				boolean mustDelete = super.mustDelete(source);
 				boolean fileExists = exists(target);
@@ -185,11 +330,15 @@ public class EnvConfigurator {
 			@Override  
 			protected void delete(Path source) throws IOException {
 				try {
-					Path target = pathHelper.getTargetWithoutSuffix(source, DELETE_SUFFIX);
-					backupHelper.backupFileOrDir(target);
+					Path target = index().get(source).getTarget();
+					backupHelper.backupFileOrDir(target, true);
 					FileUtils.delete(target);
-					LOGGER.info(" :DELETED");
-					LOGGER.info("\t" + target);
+					if(hook==FileHookEvaluator.NONE) {
+						FileHookEvaluator.log(source, pathHelper, " :DELETED", "\t" + target);
+					} else {
+						LOGGER.info(" :DELETED");
+						LOGGER.info("\t" + target);
+					}
 					hook.post();
 				} finally {
 					hook.finish();
@@ -236,6 +385,22 @@ public class EnvConfigurator {
 	 * depending on if you would like to use a template or not.
 	 * 
 	 * <p>
+	 * A directory may also have a hook, like<br>
+	 * &nbsp;&nbsp;
+	 * <code>< scd4j_module_dir >/opt/my_app.hook</code>
+	 * <br>
+	 * Its <code>pre{..}</code> is executed once before the directory is created
+	 * and its <code>post{..}</code> once after its whole subtree was copied. 
+	 * Whenever <code>pre{..}</code> does not return <code>CONTINUE</code>, 
+	 * the whole subtree is skipped.
+	 * 
+	 * <p>
+	 * Files and templates without hooks are copied by a pool of workers (see
+	 * {@link Configuration#getCopyParallelism()}). Hooks work as barriers: before 
+	 * any <code>pre{..}</code> or <code>post{..}</code> is executed, all files 
+	 * visited so far are already in place, just like in a sequential copy.
+	 * 
+	 * <p>
 	 * For more information about how to write a <code>.hook</code> file see
 	 * {@link Hook#pre()} and {@link Hook#post()}
 	 */
@@ -244,9 +409,82 @@ public class EnvConfigurator {
 		final Map<String, Object> properties = conf.getProps();
 		
 		final Path target = pathHelper.getTarget(module);
+		final ThreadLocal<TemplateEngine> engines = ThreadLocal.withInitial(conf::getTemplateEngine);
+		
+		// what the last successful execution has applied and what this one is applying 
+		// (in streaming mode it is not kept, as it grows with the number of files)
+		if(conf.isCopyStreaming()) {
+			applied = Manifest.none();
+			applying = Manifest.none();
+		} else {
+			if(applied==null) {
+				applied = Manifest.load(conf.getManifestFile());
+			}
+			applying = new Manifest();
+		}
+		writer = new AtomicWriter(conf.getCopyFsync(), conf.getCopyTransferThreshold());
+		// the delete phase may have removed some of them
+		targetDirs.clear();
 		
-		FileUtils.copy(new CopyVisitor(module, target, "*" + DELETE_SUFFIX){
+		try (WorkerPool workers = new WorkerPool("scd4j-copy", conf.getCopyParallelism())) {
+			walkCopying(module, target, properties, workers, engines);
+			workers.await();
+		}
+		writer.sync();
+	}
+	
+	private void walkCopying(final Path module, final Path target, final Map<String, Object> properties, 
+			final WorkerPool workers, final ThreadLocal<TemplateEngine> engines) {
+		index().walk(new CopyVisitor(module, target, "*" + DELETE_SUFFIX, targetDirs){
 			private FileHookEvaluator hook;
+			private final Deque<FileHookEvaluator> dirHooks = new ArrayDeque<>();
+			
+			/** Executes the directory hook pre, once for the whole subtree */
+			@Override
+			protected boolean mustVisit(Path dir) {
+				if(!index().hasHook(dir)) {
+					// most directories do not have hooks, so there is nothing to set up
+					dirHooks.push(FileHookEvaluator.NONE);
+					return true;
+				}
+				
+				final Path target = index().get(dir).getTarget();
+				final FileHookEvaluator dirHook = FileHookEvaluator.of(dir, target, conf, index().getHooks(), runtime());
+				if(dirHook!=FileHookEvaluator.NONE) {
+					workers.await();
+				}
+				
+				boolean pre = false;
+				try {
+					pre = dirHook.pre();
+				} finally {
+					if(!pre){
+						dirHook.finish();
+					}
+				}
+				if(pre) {
+					dirHooks.push(dirHook);
+				}
+				return pre;
+			}
+			
+			/** Executes the directory hook post, after the whole subtree */
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				final FileHookEvaluator dirHook = dirHooks.pop();
+				if(dirHook!=FileHookEvaluator.NONE) {
+					workers.await();
+				}
+				try {
+					dirHook.post();
+				} finally {
+					dirHook.finish();
+				}
+				if(conf.isCopyStreaming() && targetDirs.size() > STREAMING_TARGET_DIRS) {
+					targetDirs.clear();
+				}
+				return super.postVisitDirectory(dir, e);
+			}
 			
 			/** Do not consider .del files */
 			@Override 
@@ -255,10 +493,18 @@ public class EnvConfigurator {
 					return false;
 				}
 				
-				final Path target = pathHelper.getTargetWithoutSuffix(source, TEMPLATE_SUFFIX);
-				hook = new FileHookEvaluator(source, target, conf);
-				
 				boolean mustCopy = !matcher.matches(source.getFileName());
+				if(index().get(source).isDirectory()) {
+					// directory hooks are handled by mustVisit
+					return mustCopy;
+				}
+				
+				final Path target = index().get(source).getTarget();
+				hook = FileHookEvaluator.of(source, target, conf, index().getHooks(), runtime());
+				if(mustCopy && hook!=FileHookEvaluator.NONE) {
+					workers.await();
+				}
+				
 				boolean pre = true;
 				try {
 					return mustCopy && (pre = hook.pre());
@@ -269,39 +515,130 @@ public class EnvConfigurator {
 				}				
 			}
 			
-			/** Copy or merge templates */
+			/** Copy or merge templates. Files without hooks are handed to the workers */
 			@Override 
 			protected void copy(Path source, final Path target) throws IOException {
+				if(hook==FileHookEvaluator.NONE) {
+					workers.submit(() -> copyOrMerge(source, target, engines.get(), properties, FileHookEvaluator.NONE));
+					return;
+				}
+				
 				try {
-					if(source.toString().endsWith(TEMPLATE_SUFFIX)) {
-						File resolvedTargetFile = new File(target.toString().replace(TEMPLATE_SUFFIX, ""));
-						backupHelper.backupFile(resolvedTargetFile.toPath());
-					    try (Writer out = new BufferedWriter(new FileWriter(resolvedTargetFile))) {
-							engine.createTemplate(source)
-								.make(properties)
-								.writeTo(out);
-						} catch (Exception e) {
-							throw new IOException(e);
-						}
-					    LOGGER.info(" :TMPL_MERGED");
-					    LOGGER.info("\t" + source + " -> " + resolvedTargetFile);
-					    hook.post();
-					} else {
-						backupHelper.backupFile(target);
-						Files.copy(source, target, REPLACE_EXISTING);
-						LOGGER.info(" :COPIED");
-						LOGGER.info("\t" + source + " -> " + target);
-						hook.post();
-					}
+					copyOrMerge(source, target, engine, properties, hook);
+					hook.post();
 				} finally {
 					hook.finish();
 				}
 			}
 			
+			/** Already resolved by the index */
+			@Override
+			protected Path resolveTarget(Path source) {
+				return index().get(source).getTarget();
+			}
+			
 			@Override
-			protected Path resolveVars(Path path) {			
-				return pathHelper.replaceVars(path);
+			protected void createDirectories(Path dir) throws IOException {
+				EnvConfigurator.this.createDirectories(dir);
 			}
 		});
 	}
+	
+	/** 
+	 * Creates the target directory and its missing parents. They are backed up
+	 * (i.e. recorded) first, so that a rollback removes them
+	 */
+	private void createDirectories(Path dir) throws IOException {
+		final Deque<Path> missing = new ArrayDeque<>();
+		for (Path d = dir; d != null && Files.notExists(d); d = d.getParent()) {
+			missing.push(d);
+		}
+		for (Path d : missing) {
+			backupHelper.backupAddedDir(d);
+		}
+		Files.createDirectories(dir);
+	}
+	
+	/** 
+	 * Copies the file or merges the template. It may be executed by any worker.
+	 * <p>
+	 * Whenever the target already has the very same content (i.e. same size
+	 * and hash), neither the backup nor the write is done. Whenever the
+	 * {@link Manifest} of the last execution shows that neither the source nor
+	 * the target have changed since then, none of them is even read. Files
+	 * are only hashed when sizes are the same (see {@link Source}). The
+	 * properties are hashed right before each template is merged, as hooks may
+	 * have changed them. Hooks never run while workers do (see {@link WorkerPool#await()}).
+	 * <p>
+	 * Targets are never truncated in place: they are written aside and then
+	 * renamed (see {@link AtomicWriter}).
+	 */
+	private void copyOrMerge(Path source, Path target, TemplateEngine engine, Map<String, Object> properties, 
+			FileHookEvaluator hook) throws IOException {
+		final boolean template = source.toString().endsWith(TEMPLATE_SUFFIX);
+		final Source src = Source.of(source);
+		if(template) {
+			Path resolvedTargetFile = Paths.get(target.toString().replace(TEMPLATE_SUFFIX, ""));
+			final String propsHash = Manifest.hash(properties);
+			if(applied.isUnchanged(resolvedTargetFile, src, propsHash)) {
+				applying.keep(resolvedTargetFile, applied);
+				log(hook, " :UNCHANGED", source, resolvedTargetFile);
+				return;
+			}
+			
+			byte[] merged = merge(source, engine, properties);
+			String mergedHash = HashUtils.sha256(merged);
+			if(FileUtils.sameContent(merged.length, mergedHash, resolvedTargetFile)) {
+				log(hook, " :UNCHANGED", source, resolvedTargetFile);
+			} else {
+				backupHelper.backupFile(resolvedTargetFile, true, applied.hashOf(resolvedTargetFile));
+				writer.write(merged, resolvedTargetFile);
+				log(hook, " :TMPL_MERGED", source, resolvedTargetFile);
+			}
+			applying.record(resolvedTargetFile, src, propsHash, mergedHash);
+		} else {
+			if(applied.isUnchanged(target, src, null)) {
+				applying.keep(target, applied);
+				log(hook, " :UNCHANGED", source, target);
+				return;
+			}
+			
+			if(FileUtils.sameContent(src.getSize(), src::getHash, target)) {
+				log(hook, " :UNCHANGED", source, target);
+			} else {
+				backupHelper.backupFile(target, true, applied.hashOf(target));
+				writer.copy(source, target);
+				log(hook, " :COPIED", source, target);
+			}
+			applying.record(target, src, null, null);
+		}
+	}
+	
+	/** Merges the template in memory, so that it can be compared with the target */
+	static byte[] merge(Path source, TemplateEngine engine, Map<String, Object> properties) throws IOException {
+		StringWriter out = new StringWriter();
+		try {
+			engine.createTemplate(source)
+				.make(properties)
+				.writeTo(out);
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+		return out.toString().getBytes(Charset.defaultCharset());
+	}
+	
+	/** 
+	 * Both lines are logged together, even when workers are copying
+	 * concurrently. Files without hook are also logged as if they had one
+	 */
+	private void log(FileHookEvaluator hook, String action, Path source, Path target) {
+		if(hook==FileHookEvaluator.NONE) {
+			FileHookEvaluator.log(source, pathHelper, action, "\t" + source + " -> " + target);
+			return;
+		}
+		synchronized (LOGGER) {
+			LOGGER.info(action);
+			LOGGER.info("\t" + source + " -> " + target);
+		}
+	}
 }
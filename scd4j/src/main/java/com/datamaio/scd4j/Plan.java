@@ -0,0 +1,148 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The changes an execution would apply to the target file system (see
+ * {@link Planner}). This class is thread safe.
+ * 
+ * @author Fernando Rubbo
+ */
+public class Plan {
+	
+	/** 
+	 * UNKNOWN means that the change depends on something only the execution
+	 * knows, e.g. a variable set by <code>Module.hook</code>
+	 */
+	public enum Action { ADD, MODIFY, DELETE, UNCHANGED, UNKNOWN }
+	
+	private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+	
+	void add(Action action, Path target, long bytes, boolean hook) {
+		changes.add(new Change(action, target, bytes, hook, null));
+	}
+	
+	/** The given path is the target, whenever it is known, or else the source */
+	void unknown(Path path, boolean hook, String cause) {
+		changes.add(new Change(Action.UNKNOWN, path, 0, hook, cause));
+	}
+	
+	/** All changes, sorted by target */
+	public List<Change> getChanges() {
+		return changes.stream().sorted(comparing(Change::getTarget)).collect(toList());
+	}
+	
+	public List<Change> getChanges(Action action) {
+		return getChanges().stream().filter(c -> c.action==action).collect(toList());
+	}
+	
+	/** Total of bytes written (ADD, MODIFY), deleted (DELETE) or kept (UNCHANGED). Always 0 for UNKNOWN */
+	public long getBytes(Action action) {
+		return changes.stream().filter(c -> c.action==action).mapToLong(Change::getBytes).sum();
+	}
+	
+	/** Whether the execution would not change anything at all */
+	public boolean isEmpty() {
+		return changes.stream().allMatch(c -> c.action==Action.UNCHANGED);
+	}
+	
+	/** 
+	 * One line per change (<code>*</code> marks files with hooks, whose
+	 * <code>pre{..}</code> may still skip them), followed by a summary
+	 */
+	public String toText() {
+		StringBuilder buff = new StringBuilder();
+		for (Change c : getChanges()) {
+			buff.append(String.format(Locale.ROOT, "%-9s %1s %14d  %s", c.action, c.hook ? "*" : "", c.bytes, c.target));
+			if(c.cause!=null) {
+				buff.append("  (").append(c.cause).append(")");
+			}
+			buff.append(System.lineSeparator());
+		}
+		for (Action action : Action.values()) {
+			buff.append(String.format(Locale.ROOT, "%-9s: %d file(s), %d byte(s)", 
+					action, getChanges(action).size(), getBytes(action)))
+				.append(System.lineSeparator());
+		}
+		return buff.toString();
+	}
+	
+	@Override
+	public String toString() {
+		return toText();
+	}
+	
+	/** A single target file (or directory, when deleted) */
+	public static final class Change {
+		private final Action action;
+		private final Path target;
+		private final long bytes;
+		private final boolean hook;
+		private final String cause;
+		
+		private Change(Action action, Path target, long bytes, boolean hook, String cause) {
+			this.action = action;
+			this.target = target;
+			this.bytes = bytes;
+			this.hook = hook;
+			this.cause = cause;
+		}
+
+		public Action getAction() {
+			return action;
+		}
+
+		public Path getTarget() {
+			return target;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		/** Whether the source has a hook, which is never executed by the plan */
+		public boolean hasHook() {
+			return hook;
+		}
+		
+		/** Why the change is UNKNOWN, or <code>null</code> for any other action */
+		public String getCause() {
+			return cause;
+		}
+		
+		@Override
+		public String toString() {
+			return action + " " + target + " (" + bytes + " bytes)";
+		}
+	}
+}
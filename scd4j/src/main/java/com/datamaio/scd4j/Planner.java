@@ -0,0 +1,203 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static com.datamaio.scd4j.Plan.Action.ADD;
+import static com.datamaio.scd4j.Plan.Action.DELETE;
+import static com.datamaio.scd4j.Plan.Action.MODIFY;
+import static com.datamaio.scd4j.Plan.Action.UNCHANGED;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.tmpl.TemplateEngine;
+import com.datamaio.scd4j.util.Manifest;
+import com.datamaio.scd4j.util.Manifest.Source;
+import com.datamaio.scd4j.util.ModuleIndex;
+import com.datamaio.scd4j.util.ModuleIndex.Entry;
+import com.datamaio.scd4j.util.ModuleIndex.Kind;
+import com.datamaio.scd4j.util.PathHelper;
+import com.datamaio.scd4j.util.WorkerPool;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * Computes what {@link EnvConfigurator#execute()} would change in the target
+ * file system, without any side effect: nothing is written, no backup is
+ * taken and no hook is executed. Templates are merged in memory.
+ * <p>
+ * As not even <code>Module.hook</code> is executed, paths and templates that
+ * use variables set by hooks cannot be resolved. These entries are reported
+ * as {@link Plan.Action#UNKNOWN}, instead of failing the whole plan.
+ * <p>
+ * Just like the installation, it relies on the {@link Manifest} of the last
+ * execution and on content hashes, and files are checked by a pool of workers.
+ * 
+ * @author Fernando Rubbo
+ */
+public class Planner {
+	private final Configuration conf;
+	private final PathHelper pathHelper;
+	
+	public Planner(Configuration conf) {
+		this.conf = conf;
+		this.pathHelper = new PathHelper(conf);
+	}
+	
+	public Plan plan() {
+		final ModuleIndex index = new ModuleIndex(conf.getModule(), pathHelper, conf.isCopyStreaming());
+		final Manifest applied = Manifest.load(conf.getManifestFile());
+		final Map<String, Object> properties = conf.getProps();
+		final String propsHash = Manifest.hash(properties);
+		final ThreadLocal<TemplateEngine> engines = ThreadLocal.withInitial(conf::getTemplateEngine);
+		final Plan plan = new Plan();
+		
+		try (WorkerPool workers = new WorkerPool("scd4j-plan", conf.getCopyParallelism())) {
+			index.walk(new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					Entry e = index.get(dir);
+					if(e.getKind()==Kind.DELETE) {
+						final boolean hook = index.hasHook(dir);
+						workers.submit(() -> planDelete(plan, e, hook));
+						// the content of deleted directories is never copied
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					Entry e = index.get(file);
+					final boolean hook = index.hasHook(file);
+					switch (e.getKind()) {
+					case DELETE:
+						workers.submit(() -> planDelete(plan, e, hook));
+						break;
+					case TEMPLATE:
+						workers.submit(() -> planTemplate(plan, e, hook, applied, propsHash, engines.get(), properties));
+						break;
+					case PLAIN:
+						workers.submit(() -> planFile(plan, e, hook, applied));
+						break;
+					default:
+						// hooks are not copied
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			workers.await();
+		}
+		return plan;
+	}
+
+	private void planDelete(Plan plan, Entry e, boolean hook) throws IOException {
+		Path target = target(plan, e, hook);
+		if(target!=null && Files.exists(target)) {
+			plan.add(DELETE, target, size(target), hook);
+		}
+	}
+
+	private void planFile(Plan plan, Entry e, boolean hook, Manifest applied) throws IOException {
+		Path target = target(plan, e, hook);
+		if(target==null) {
+			return;
+		}
+		Source source = Source.of(e.getSource(), e.getAttrs());
+		long size = source.getSize();
+		if(applied.isUnchanged(target, source, null) || FileUtils.sameContent(size, source::getHash, target)) {
+			plan.add(UNCHANGED, target, size, hook);
+		} else {
+			plan.add(Files.exists(target) ? MODIFY : ADD, target, size, hook);
+		}
+	}
+	
+	private void planTemplate(Plan plan, Entry e, boolean hook, Manifest applied, String propsHash, 
+			TemplateEngine engine, Map<String, Object> properties) throws IOException {
+		Path target = target(plan, e, hook);
+		if(target==null) {
+			return;
+		}
+		Source source = Source.of(e.getSource(), e.getAttrs());
+		// hooks are not executed, so templates whose hooks set properties are always merged
+		if(applied.isUnchanged(target, source, propsHash)) {
+			plan.add(UNCHANGED, target, applied.get(target).getSize(), hook);
+			return;
+		}
+		
+		byte[] merged;
+		try {
+			merged = EnvConfigurator.merge(e.getSource(), engine, properties);
+		} catch (IOException ex) {
+			// e.g. a property set by a hook
+			plan.unknown(target, hook, "template not merged: " + rootCause(ex).getMessage());
+			return;
+		}
+		if(FileUtils.sameContent(merged, target)) {
+			plan.add(UNCHANGED, target, merged.length, hook);
+		} else {
+			plan.add(Files.exists(target) ? MODIFY : ADD, target, merged.length, hook);
+		}
+	}
+	
+	/** Resolved target, or <code>null</code> when it uses a variable not declared yet (e.g. set by a hook) */
+	private static Path target(Plan plan, Entry e, boolean hook) {
+		try {
+			return e.getTarget();
+		} catch (IllegalStateException ex) {
+			plan.unknown(e.getSource(), hook, ex.getMessage());
+			return null;
+		}
+	}
+	
+	private static Throwable rootCause(Throwable t) {
+		while(t.getCause()!=null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+	
+	/** Size of the file or of the whole directory */
+	private static long size(Path target) throws IOException {
+		if(!Files.isDirectory(target)) {
+			return Files.size(target);
+		}
+		try (Stream<Path> paths = Files.walk(target)) {
+			return paths.mapToLong(p -> {
+				try {
+					BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+					return attrs.isRegularFile() ? attrs.size() : 0;
+				} catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+			}).sum();
+		}
+	}
+}
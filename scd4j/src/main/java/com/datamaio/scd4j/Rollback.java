@@ -0,0 +1,189 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.util.BackupHelper;
+import com.datamaio.scd4j.util.BackupRun;
+import com.datamaio.scd4j.util.BackupRun.Entry;
+import com.datamaio.scd4j.util.BackupRun.Kind;
+import com.datamaio.scd4j.util.WorkerPool;
+import com.datamaio.scd4j.util.io.AtomicWriter;
+
+/**
+ * Restores the targets of a previous execution from its backup (see
+ * {@link BackupRun}): files it has replaced or deleted get their previous
+ * content and permissions back, directories it has deleted are recreated and
+ * files it has added are removed, as well as the directories it has added,
+ * deepest first, as long as they are empty. No hook is executed.
+ * <p>
+ * Files are restored by a pool of workers, each one written aside and then
+ * renamed (see {@link AtomicWriter}). The rollback is backed up just like
+ * any execution, so that it can be rolled back as well.
+ * 
+ * @author Fernando Rubbo
+ */
+public class Rollback {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private final Configuration conf;
+	
+	public Rollback(Configuration conf) {
+		this.conf = conf;
+	}
+	
+	/** Backups of the previous executions of this module and config, oldest first */
+	public List<BackupRun> executions() {
+		final Path root = conf.getBackupStoreDir();
+		final String name = new BackupRun(conf.getBackupDir()).getName(root);
+		return BackupRun.list(root).stream()
+				.filter(r -> r.getName(root).equals(name))
+				.collect(toList());
+	}
+	
+	/** 
+	 * Backup of the execution with the given timestamp (i.e. <code>yyyyMMddHHmmss</code>) 
+	 * or, when <code>null</code>, of the last one. Returns <code>null</code> if there is none
+	 */
+	public BackupRun execution(String timestamp) {
+		List<BackupRun> executions = executions();
+		if(timestamp==null) {
+			return executions.isEmpty() ? null : executions.get(executions.size() - 1);
+		}
+		for (BackupRun r : executions) {
+			if(r.getDir().getFileName().toString().endsWith("_" + timestamp)) {
+				return r;
+			}
+		}
+		return null;
+	}
+	
+	public void rollback(BackupRun execution) {
+		// the first entry of a path holds its state before the execution
+		final Map<Path, Entry> entries = new LinkedHashMap<>();
+		for (Entry e : execution.load()) {
+			entries.putIfAbsent(e.getPath(), e);
+		}
+		final List<Entry> dirs = entries.values().stream()
+				.filter(e -> e.getKind()==Kind.DIR)
+				.sorted((e1, e2) -> e1.getPath().compareTo(e2.getPath()))
+				.collect(toList());
+		final List<Entry> addedDirs = entries.values().stream()
+				.filter(e -> e.getKind()==Kind.ADDED_DIR)
+				.sorted(comparing((Entry e) -> e.getPath().getNameCount()).reversed())
+				.collect(toList());
+		final List<Entry> files = new ArrayList<>(entries.values());
+		files.removeAll(dirs);
+		files.removeAll(addedDirs);
+		
+		final BackupHelper backupHelper = new BackupHelper(conf);
+		final AtomicWriter writer = new AtomicWriter(conf.getCopyFsync(), conf.getCopyTransferThreshold());
+		try (WorkerPool workers = new WorkerPool("scd4j-rollback", conf.getCopyParallelism())) {
+			for (Entry dir : dirs) {
+				Files.createDirectories(dir.getPath());
+			}
+			for (Entry file : files) {
+				if(file.getKind()==Kind.ADDED) {
+					workers.submit(() -> remove(file.getPath(), backupHelper));
+				} else {
+					workers.submit(() -> restore(file, backupHelper, writer));
+				}
+			}
+			workers.await();
+			writer.sync();
+			for (Entry dir : addedDirs) {
+				removeDir(dir.getPath(), backupHelper);
+			}
+			
+			// permissions are only restored now, as read only directories could not be filled
+			for (Entry dir : dirs) {
+				if(dir.getPermissions()!=null) {
+					Files.setPosixFilePermissions(dir.getPath(), dir.getPermissions());
+				}
+			}
+			// targets no more are what the last execution has applied
+			Files.deleteIfExists(conf.getManifestFile());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			backupHelper.close();
+		}
+	}
+	
+	private static void restore(Entry file, BackupHelper backupHelper, AtomicWriter writer) throws IOException {
+		Path target = file.getPath();
+		Files.createDirectories(target.getParent());
+		backupHelper.backupFile(target, true);
+		try (InputStream in = backupHelper.getStore().open(file.getHash())) {
+			writer.write(in, target, file.getPermissions());
+		}
+		log(" :RESTORED", target);
+	}
+	
+	private static void remove(Path target, BackupHelper backupHelper) throws IOException {
+		if(Files.exists(target)) {
+			backupHelper.backupFile(target, true);
+			Files.delete(target);
+			log(" :REMOVED", target);
+		}
+	}
+	
+	/** Directories that are not empty (i.e. with files the execution has not added) are kept */
+	private static void removeDir(Path dir, BackupHelper backupHelper) throws IOException {
+		if(!Files.isDirectory(dir)) {
+			return;
+		}
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+			if(children.iterator().hasNext()) {
+				LOGGER.info("Directory " + dir + " is not empty. It is kept");
+				return;
+			}
+		}
+		backupHelper.backupFileOrDir(dir, true);
+		Files.delete(dir);
+		log(" :REMOVED", dir);
+	}
+	
+	/** Both lines are logged together, even when workers are restoring concurrently */
+	private static void log(String action, Path target) {
+		synchronized (LOGGER) {
+			LOGGER.info(action);
+			LOGGER.info("\t" + target);
+		}
+	}
+}
@@ -65,6 +65,8 @@ public abstract class Command {
 		}		
 	};
 	
+	private static final ThreadLocal<Stats> STATS = ThreadLocal.withInitial(Stats::new);
+	
 	public static Command INSTANCE;
 	public static synchronized final Command get() {
 		if(INSTANCE==null) {
@@ -327,6 +329,7 @@ public abstract class Command {
 		ThreadedStreamHandler cmdStdHandler = null;
 		ThreadedStreamHandler cmdErrorHandler = null;
 		String cmdOutput = "";
+		long start = System.nanoTime();
 		
 		try {
 			final Process process = startProcess(cmd, pInter);
@@ -361,9 +364,44 @@ public abstract class Command {
 		} finally {
 			quitellyClose(out);
 			pInter.cleanup();
+			STATS.get().add(System.nanoTime() - start);
 		}		
 	}
 	
+	/** 
+	 * Returns the processes spawned by the current thread so far. 
+	 * Callers interested in a interval must take a {@link Stats#copy()} before and after it.
+	 */
+	public static Stats stats() {
+		return STATS.get();
+	}
+	
+	/** Number of child processes spawned and the time spent until they have ended */
+	public static final class Stats {
+		private int processes;
+		private long waitNanos;
+		
+		private void add(long nanos) {
+			processes++;
+			waitNanos += nanos;
+		}
+		
+		public Stats copy() {
+			Stats copy = new Stats();
+			copy.processes = processes;
+			copy.waitNanos = waitNanos;
+			return copy;
+		}
+		
+		public int getProcesses() {
+			return processes;
+		}
+		
+		public long getWaitNanos() {
+			return waitNanos;
+		}
+	}
+	
 	static String readInteractionCmdOutput(ThreadedStreamHandler cmdStdHandler, ThreadedStreamHandler cmdErrorHandler) 
 			throws InterruptedException {
 		stopInteractionThreads(cmdStdHandler, cmdErrorHandler);
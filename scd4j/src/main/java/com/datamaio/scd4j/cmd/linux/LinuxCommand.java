@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 
 import com.datamaio.scd4j.cmd.Command;
 import com.datamaio.scd4j.cmd.Interaction;
+import com.datamaio.scd4j.util.io.PosixUtils;
 
 /**
  * 
@@ -107,16 +108,22 @@ public abstract class LinuxCommand extends Command {
 		chmod(mode, file, false);
 	}
 
+	/** Changed in process (see {@link PosixUtils}). The command is only run for what it does not support */
 	@Override
 	public void chmod(final String mode, final String file, final boolean recursive) {
-		List<String> cmd = new ArrayList<>();
-		cmd.add("chmod");
-		if (recursive) {
-			cmd.add("-R");
+		try {
+			PosixUtils.chmod(mode, Paths.get(file), recursive);
+		} catch (IOException | IllegalArgumentException | UnsupportedOperationException e) {
+			LOGGER.fine("chmod " + mode + " " + file + " could not be done in process (" + e + "). Running the command");
+			List<String> cmd = new ArrayList<>();
+			cmd.add("chmod");
+			if (recursive) {
+				cmd.add("-R");
+			}
+			cmd.add(mode);
+			cmd.add(file);
+			run(cmd);
 		}
-		cmd.add(mode);
-		cmd.add(file);
-		run(cmd);
 
 		if (file.endsWith(".sh")) {
 			// executa este cara apenas para garantir que se alguem salvou no windows
@@ -152,16 +159,22 @@ public abstract class LinuxCommand extends Command {
 		chown(user, group, path, false);
 	}
 
+	/** Changed in process (see {@link PosixUtils}). The command is only run for what it does not support */
 	@Override
 	public void chown(final String user, final String group, final String path, final boolean recursive) {
-		List<String> cmd = new ArrayList<>();
-		cmd.add("chown");
-		if (recursive) {
-			cmd.add("-R");
+		try {
+			PosixUtils.chown(user, group, Paths.get(path), recursive);
+		} catch (IOException | UnsupportedOperationException e) {
+			LOGGER.fine("chown " + user + " " + path + " could not be done in process (" + e + "). Running the command");
+			List<String> cmd = new ArrayList<>();
+			cmd.add("chown");
+			if (recursive) {
+				cmd.add("-R");
+			}
+			cmd.add(user + (group!=null ? ":" + group : ""));
+			cmd.add(path);
+			run(cmd);
 		}
-		cmd.add(user + (group!=null ? ":" + group : ""));
-		cmd.add(path);
-		run(cmd);
 	}
 	
 	@Override
@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.conf;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class Backup {
+	/** 
+	 * Whether backed up contents are gzip compressed (the default). Otherwise
+	 * targets, which are always replaced by a rename or deleted, are hard
+	 * linked whenever possible (see {@link com.datamaio.scd4j.util.BackupStore#put(java.nio.file.Path, boolean)}),
+	 * so that taking a backup writes no content at all
+	 */
+	private boolean compress = true;
+	/** Number of executions of each module and config kept (0 keeps them all) */
+	private int keep = 0;
+	/** Age (in days) from which executions are no more kept (0 keeps them all) */
+	private int maxAge = 0;
+	/** Size (in bytes) of all backups from which the oldest executions are no more kept (0 means no limit) */
+	private long maxSize = 0;
+
+	public Backup() { }
+	
+	public Backup(boolean compress, int keep, int maxAge, long maxSize) {
+		super();
+		this.compress = compress;
+		this.keep = keep;
+		this.maxAge = maxAge;
+		this.maxSize = maxSize;
+	}
+
+	protected boolean isCompress() {
+		return compress;
+	}
+
+	protected void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+
+	protected int getKeep() {
+		return keep;
+	}
+
+	protected void setKeep(int keep) {
+		this.keep = keep;
+	}
+
+	protected int getMaxAge() {
+		return maxAge;
+	}
+
+	protected void setMaxAge(int maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	protected long getMaxSize() {
+		return maxSize;
+	}
+
+	protected void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public String toString() {
+		return "{compress:" + compress + ", keep:" + keep + ", maxAge:" + maxAge + ", maxSize:" + maxSize + "}";
+	}
+}
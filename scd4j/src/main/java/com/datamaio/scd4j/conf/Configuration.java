@@ -32,8 +32,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import com.datamaio.scd4j.tmpl.TemplateCache;
 import com.datamaio.scd4j.tmpl.TemplateEngine;
 import com.datamaio.scd4j.tmpl.TemplateEngineConfig;
+import com.datamaio.scd4j.util.io.AtomicWriter.Fsync;
 import com.datamaio.scd4j.util.io.PathUtils;
 
 /**
@@ -47,6 +49,8 @@ public class Configuration {
 	public static final String CONFIG_FOLDER = "config";
 	public static final String LOG_FOLDER = "log";
 	public static final String BACKUP_FOLDER = "backup";
+	public static final String HOOKS_FOLDER = "hooks";
+	public static final String STATE_FOLDER = "state";
 	
 	public static final String HOOK_SUFFIX = ".hook";
 	public static final String DELETE_SUFFIX = ".del";
@@ -56,6 +60,8 @@ public class Configuration {
 	private final Settings settings;
 	/** Dependencies. Where the key is the gradle dependency and the value is the file path */
 	private final Map<String, Path> dependencies;
+	/** Compiled templates, which may be shared by the configurations of the same run */
+	private TemplateCache templateCache = new TemplateCache();
 	
 	public static final Configuration build(Path module){
 		Install install = new Install(module);
@@ -130,7 +136,40 @@ public class Configuration {
 	public TemplateEngine getTemplateEngine() {
 		Template template = settings.getTemplate();
 		final TemplateEngineConfig engineConfig = new TemplateEngineConfig(template.getEngine());
-		return TemplateEngine.get(engineConfig);
+		return TemplateEngine.get(engineConfig, templateCache);
+	}
+	
+	public TemplateCache getTemplateCache() {
+		return templateCache;
+	}
+	
+	/** Shares the compiled templates with other configurations, e.g. all modules of the same run */
+	public void setTemplateCache(TemplateCache templateCache) {
+		this.templateCache = templateCache;
+	}
+	
+	public boolean isHookCompileStatic() {
+		return settings.getHooks().isCompileStatic();
+	}
+	
+	/** Number of threads copying files without hooks (see {@link Copy}) */
+	public int getCopyParallelism() {
+		return settings.getCopy().getParallelism();
+	}
+	
+	/** Size from which files are transferred by the kernel (see {@link Copy}) */
+	public long getCopyTransferThreshold() {
+		return settings.getCopy().getTransferThreshold();
+	}
+	
+	/** When copied files are synced to disk (see {@link Copy}) */
+	public Fsync getCopyFsync() {
+		return settings.getCopy().getFsync();
+	}
+	
+	/** Whether modules are walked in streaming mode, i.e. with bounded memory (see {@link Copy}) */
+	public boolean isCopyStreaming() {
+		return settings.getCopy().isStreaming();
 	}
 	
 	public Path getLogFile() {
@@ -139,10 +178,53 @@ public class Configuration {
 		return PathUtils.get(workspace(), LOG_FOLDER, fileName).normalize();
 	}
 
+	/** Backup of this execution (see {@link com.datamaio.scd4j.util.BackupRun}) */
 	public Path getBackupDir() {
 		String currentExecutionPath = buildCurrentExecutionPath();
 		return PathUtils.get(workspace(), BACKUP_FOLDER, currentExecutionPath).normalize();
 	}
+	
+	/** 
+	 * Root of all backups: the contents shared by every execution (see
+	 * {@link com.datamaio.scd4j.util.BackupStore}) and the backup of each one
+	 */
+	public Path getBackupStoreDir() {
+		return PathUtils.get(workspace(), BACKUP_FOLDER).normalize();
+	}
+	
+	/** Whether backed up contents are compressed (see {@link Backup}) */
+	public boolean isBackupCompressed() {
+		return settings.getBackup().isCompress();
+	}
+	
+	/** Number of executions of each module and config whose backups are kept (see {@link Backup}) */
+	public int getBackupKeep() {
+		return settings.getBackup().getKeep();
+	}
+	
+	/** Age (in days) from which backups are no more kept (see {@link Backup}) */
+	public int getBackupMaxAge() {
+		return settings.getBackup().getMaxAge();
+	}
+	
+	/** Size (in bytes) of all backups from which the oldest are no more kept (see {@link Backup}) */
+	public long getBackupMaxSize() {
+		return settings.getBackup().getMaxSize();
+	}
+
+	/** 
+	 * Manifest of what the last successful execution of this module, with
+	 * this config, has applied (see {@link com.datamaio.scd4j.util.Manifest})
+	 */
+	public Path getManifestFile() {
+		String fileName = buildExecutionName() + ".manifest";
+		return PathUtils.get(workspace(), STATE_FOLDER, fileName).normalize();
+	}
+
+	/** Directory where hooks compiled at build time (see <code>compileHooks</code> task) are shipped within the pack */
+	public Path getHooksDir() {
+		return PathUtils.get(workspace(), HOOKS_FOLDER).normalize();
+	}
 
 	private Path workspace() {
 		return Paths.get(".").toAbsolutePath();
@@ -152,26 +234,30 @@ public class Configuration {
 	private synchronized String buildCurrentExecutionPath() {
 		if(currentExecutionPath==null) {		
 			SimpleDateFormat df = new SimpleDateFormat("yyyyMMddHHmmss");
-			
-			Path workspace = workspace();
-			Path config = getConfig();
-			String fileName;
-			if(config!=null) {
-				fileName = workspace.relativize(config).toString().replace("config/", "");
-			} else {
-				fileName = workspace.toString().replace("config/", "");
-			}
-			
-			if(fileName.endsWith(".conf")) {
-				fileName = fileName.replace(".conf", "");
-			}
-			if(fileName.endsWith(".properties")) {
-				fileName = fileName.replace(".properties", "");
-			}
-			String module = getModule().getFileName().toString();
-			currentExecutionPath = Paths.get(module, fileName + "_" + df.format(new Date())).toString();
+			currentExecutionPath = buildExecutionName() + "_" + df.format(new Date());
 		}
 		
 		return currentExecutionPath;
 	}
+
+	/** Module and config names (i.e. without the execution timestamp) */
+	private String buildExecutionName() {
+		Path workspace = workspace();
+		Path config = getConfig();
+		String fileName;
+		if(config!=null) {
+			fileName = workspace.relativize(config).toString().replace("config/", "");
+		} else {
+			fileName = workspace.toString().replace("config/", "");
+		}
+		
+		if(fileName.endsWith(".conf")) {
+			fileName = fileName.replace(".conf", "");
+		}
+		if(fileName.endsWith(".properties")) {
+			fileName = fileName.replace(".properties", "");
+		}
+		String module = getModule().getFileName().toString();
+		return Paths.get(module, fileName).toString();
+	}
 }
@@ -0,0 +1,88 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.conf;
+
+import com.datamaio.scd4j.util.io.AtomicWriter.Fsync;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * @author Fernando Rubbo
+ */
+public class Copy {
+	/** Number of threads copying files and merging templates without hooks */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	/** Size (in bytes) from which files are transferred by the kernel (see {@link FileUtils#copyFile(java.nio.file.Path, java.nio.file.Path, long)}) */
+	private long transferThreshold = FileUtils.TRANSFER_THRESHOLD;
+	/** When copied files are synced to disk (see {@link Fsync}) */
+	private Fsync fsync = Fsync.MODULE;
+	/** Whether modules are walked without being indexed in memory (see {@link com.datamaio.scd4j.util.ModuleIndex}) */
+	private boolean streaming = false;
+
+	public Copy() { }
+	
+	public Copy(int parallelism, long transferThreshold, Fsync fsync, boolean streaming) {
+		super();
+		this.parallelism = parallelism;
+		this.transferThreshold = transferThreshold;
+		this.fsync = fsync;
+		this.streaming = streaming;
+	}
+
+	protected int getParallelism() {
+		return parallelism;
+	}
+
+	protected void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	protected long getTransferThreshold() {
+		return transferThreshold;
+	}
+
+	protected void setTransferThreshold(long transferThreshold) {
+		this.transferThreshold = transferThreshold;
+	}
+
+	protected Fsync getFsync() {
+		return fsync;
+	}
+
+	protected void setFsync(Fsync fsync) {
+		this.fsync = fsync;
+	}
+
+	protected boolean isStreaming() {
+		return streaming;
+	}
+
+	protected void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	@Override
+	public String toString() {
+		return "{parallelism:" + parallelism + ", transferThreshold:" + transferThreshold + ", fsync:" + fsync + ", streaming:" + streaming + "}";
+	}
+}
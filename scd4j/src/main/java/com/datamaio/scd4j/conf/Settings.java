@@ -28,14 +28,20 @@ package com.datamaio.scd4j.conf;
  */
 public class Settings {
 	private Template template;
+	private Hooks hooks;
+	private Copy copy;
+	private Backup backup;
 	
 	public Settings() {
-		this(new Template());
+		this(new Template(), new Hooks(), new Copy(), new Backup());
 	}
 	
-	public Settings(Template template) {
+	public Settings(Template template, Hooks hooks, Copy copy, Backup backup) {
 		super();
 		this.template = template;
+		this.hooks = hooks;
+		this.copy = copy;
+		this.backup = backup;
 	}
 	
 	protected Template getTemplate() {
@@ -46,8 +52,32 @@ public class Settings {
 		this.template = template;
 	}
 
+	protected Hooks getHooks() {
+		return hooks;
+	}
+
+	protected void setHooks(Hooks hooks) {
+		this.hooks = hooks;
+	}
+
+	protected Copy getCopy() {
+		return copy;
+	}
+
+	protected void setCopy(Copy copy) {
+		this.copy = copy;
+	}
+
+	protected Backup getBackup() {
+		return backup;
+	}
+
+	protected void setBackup(Backup backup) {
+		this.backup = backup;
+	}
+
 	@Override
 	public String toString() {
-		return "Settings [template=" + template + "]";
+		return "Settings [template=" + template + ", hooks=" + hooks + ", copy=" + copy + ", backup=" + backup + "]";
 	}
 }
@@ -0,0 +1,263 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static com.datamaio.scd4j.conf.Configuration.HOOK_SUFFIX;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import groovy.lang.GroovyClassLoader;
+import groovy.transform.CompileStatic;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+import com.datamaio.scd4j.util.io.HashUtils;
+
+/**
+ * Persistent cache of compiled hooks.
+ * <p>
+ * Each hook script is compiled only once and its bytecode is stored in
+ * <code>~/.scd4j/cache/hooks/&lt;key&gt;</code>. The key is a hash of the
+ * full script text, the scd4j version and the hook base class (i.e.
+ * {@link com.datamaio.scd4j.hooks.file.FileHook} or
+ * {@link com.datamaio.scd4j.hooks.module.ModuleHook}). Therefore, whenever
+ * the same pack is installed again, the Groovy compilation is skipped.
+ * <p>
+ * Optionally, read only directories with hooks compiled at build time may be
+ * given (see <code>compileHooks</code> task). They are looked up first.
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookCache {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	public static final Path DEFAULT_DIR = Paths.get(System.getProperty("user.home"), ".scd4j", "cache", "hooks");
+	private static final String MAIN_FILE = "main";
+	private static final String CLASS_SUFFIX = ".class";
+	
+	private final Path dir;
+	private final Path[] precompiled;
+	
+	public HookCache() {
+		this(DEFAULT_DIR);
+	}
+	
+	public HookCache(Path dir, Path... precompiled) {
+		this.dir = dir;
+		this.precompiled = precompiled;
+	}
+	
+	/**
+	 * Returns the compiled class of the given script. It is read from the
+	 * cache if it was already compiled, otherwise it is compiled and stored.
+	 */
+	public Class<? extends Hook> load(String script, String fileName, Class<? extends Hook> baseClass) {
+		String key = key(script, baseClass, false);
+		return get(key, () -> compile(key, script, fileName, baseClass)).define(baseClass.getClassLoader());
+	}
+	
+	/**
+	 * Returns the bytecode stored under the given key. Whenever it is not
+	 * cached yet, the given compiler is called and its result is stored.
+	 */
+	CompiledHook get(String key, Supplier<CompiledHook> compiler) {
+		CompiledHook compiled = null;
+		for (Path p : precompiled) {
+			if(compiled==null && p!=null) {
+				compiled = read(p, key);
+			}
+		}
+		if(compiled==null) {
+			compiled = read(dir, key);
+		}
+		if(compiled==null) {
+			compiled = compiler.get();
+			write(key, compiled);
+		}
+		return compiled;
+	}
+	
+	static String key(String script, Class<? extends Hook> baseClass, boolean compileStatic) {
+		String version = Hook.class.getPackage().getImplementationVersion();
+		return HashUtils.sha256((version==null ? "N/A" : version) + "\n" 
+				+ baseClass.getName() + "\n" 
+				+ (compileStatic ? "static" : "dynamic") + "\n"
+				+ script);
+	}
+
+	/** 
+	 * @param compileStatic whether hooks must be statically compiled (i.e.
+	 *            <code>@CompileStatic</code>), which means type checked at
+	 *            compile time and no dynamic dispatch at runtime
+	 */
+	static CompilerConfiguration configuration(Class<? extends Hook> baseClass, boolean compileStatic) {
+		CompilerConfiguration configuration = new CompilerConfiguration();
+		configuration.setScriptBaseClass(baseClass.getName());
+		if(compileStatic) {
+			configuration.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
+		}
+		return configuration;
+	}
+	
+	static CompiledHook compile(String key, String script, String fileName, Class<? extends Hook> baseClass) {
+		CompilerConfiguration configuration = configuration(baseClass, false);
+		GroovyClassLoader loader = new GroovyClassLoader(baseClass.getClassLoader(), configuration);
+		try {
+			return compile(key, script, fileName, configuration, loader);
+		} finally {
+			try {
+				loader.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	static CompiledHook compile(String key, String script, String fileName, CompilerConfiguration configuration, GroovyClassLoader loader) {
+		CompilationUnit unit = new CompilationUnit(configuration, null, loader);
+		SourceUnit source = unit.addSource(sourceName(key, fileName), script);
+		unit.compile(Phases.CLASS_GENERATION);
+		
+		Map<String, byte[]> classes = new HashMap<>();
+		for (Object c : unit.getClasses()) {
+			GroovyClass groovyClass = (GroovyClass) c;
+			classes.put(groovyClass.getName(), groovyClass.getBytes());
+		}
+		String main = source.getAST().getClasses().get(0).getName();
+		return new CompiledHook(main, classes);
+	}
+	
+	/** 
+	 * The script class name is derived from the source name. The key is part of
+	 * it, therefore different hooks with the same file name (e.g. <code>Module.hook</code>)
+	 * can live together in the same class loader (see {@link HookRuntime}).
+	 */
+	private static String sourceName(String key, String fileName) {
+		String name = fileName.endsWith(HOOK_SUFFIX) ? fileName.substring(0, fileName.length() - HOOK_SUFFIX.length()) : fileName;
+		return name + "_" + key.substring(0, 16) + HOOK_SUFFIX;
+	}
+	
+	private CompiledHook read(Path dir, String key) {
+		Path hookDir = dir.resolve(key);
+		Path mainFile = hookDir.resolve(MAIN_FILE);
+		if(!Files.exists(mainFile)) {
+			return null;
+		}
+		
+		try {
+			String main = new String(Files.readAllBytes(mainFile), StandardCharsets.UTF_8);
+			Map<String, byte[]> classes = new HashMap<>();
+			for (Path file : FileUtils.ls(hookDir)) {
+				String name = file.getFileName().toString();
+				if(name.endsWith(CLASS_SUFFIX)) {
+					classes.put(name.substring(0, name.length() - CLASS_SUFFIX.length()), Files.readAllBytes(file));
+				}
+			}
+			LOGGER.fine("\tHook " + main + " loaded from cache " + hookDir);
+			return new CompiledHook(main, classes);
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "It was not possible to read cached hook " + hookDir + ". Compiling it again.", e);
+			return null;
+		}
+	}
+
+	/** Writes into a temporary directory and then renames it, so that concurrent executions never see partial entries */
+	private void write(String key, CompiledHook compiled) {
+		Path tmp = null;
+		try {
+			FileUtils.createDirectories(dir);
+			tmp = Files.createTempDirectory(dir, key + ".");
+			for (Map.Entry<String, byte[]> c : compiled.classes.entrySet()) {
+				Files.write(tmp.resolve(c.getKey() + CLASS_SUFFIX), c.getValue());
+			}
+			Files.write(tmp.resolve(MAIN_FILE), compiled.main.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, dir.resolve(key), ATOMIC_MOVE);
+		} catch (Exception e) {
+			// another execution may have cached it first. Anyway, it is not a reason to stop the installation
+			LOGGER.log(Level.FINE, "It was not possible to cache hook " + compiled.main, e);
+			if(tmp!=null) {
+				FileUtils.delete(tmp);
+			}
+		}
+	}
+	
+	/** Bytecode of a hook script (the script class itself and all its closures) */
+	static final class CompiledHook {
+		private final String main;
+		private final Map<String, byte[]> classes;
+		
+		CompiledHook(String main, Map<String, byte[]> classes) {
+			this.main = main;
+			this.classes = classes;
+		}
+		
+		Class<? extends Hook> define(ClassLoader parent) {
+			return new HookClassLoader(parent).define(this);
+		}
+	}
+	
+	/** Defines hook classes from their bytecode. Bytecode is dropped as soon as the class is defined */
+	static final class HookClassLoader extends ClassLoader {
+		private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+		
+		HookClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+		
+		@SuppressWarnings("unchecked")
+		Class<? extends Hook> define(CompiledHook compiled) {
+			classes.putAll(compiled.classes);
+			try {
+				return (Class<? extends Hook>) loadClass(compiled.main);
+			} catch (ClassNotFoundException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.remove(name);
+			if(bytes==null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static com.datamaio.scd4j.conf.Configuration.HOOK_SUFFIX;
+import static com.datamaio.scd4j.hooks.module.ModuleHookEvaluator.MODULE_HOOK;
+import static java.util.stream.Collectors.toList;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.hooks.file.FileHook;
+import com.datamaio.scd4j.hooks.module.ModuleHook;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * Compiles all <code>Module.hook</code> and <code>*.hook</code> files of a
+ * module concurrently, reporting all compilation errors at once.
+ * <p>
+ * It is used before installing a module (see
+ * {@link com.datamaio.scd4j.EnvConfigurator#execute()}), so that no file is
+ * touched when any hook is broken, and at build time (see
+ * <code>compileHooks</code> task) to ship the compiled hooks within the pack.
+ * In both cases, the compiled hooks are stored into the {@link HookCache} of
+ * the given {@link HookRuntime}.
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookCompiler {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private final HookRuntime runtime;
+	private final int parallelism;
+	
+	public HookCompiler(HookRuntime runtime) {
+		this(runtime, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public HookCompiler(HookRuntime runtime, int parallelism) {
+		this.runtime = runtime;
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Compiles all hooks of the given module
+	 * 
+	 * @return the compiled hook files
+	 */
+	public List<Path> compile(Path module) {
+		List<Path> hooks = new ArrayList<>(FileUtils.find(module, "*" + HOOK_SUFFIX));
+		compile(module, hooks);
+		return hooks;
+	}
+	
+	/**
+	 * Compiles the given hooks of the module.
+	 * 
+	 * @throws RuntimeException listing all hooks which could not be compiled
+	 */
+	public void compile(final Path module, Collection<Path> hooks) {
+		if(hooks.isEmpty()) {
+			return;
+		}
+		
+		LOGGER.info("Compiling " + hooks.size() + " hook(s) of " + module);
+		List<Callable<String>> tasks = hooks.stream()
+				.map(hook -> (Callable<String>) () -> compile(module, hook))
+				.collect(toList());
+		
+		List<String> errors = new ArrayList<>();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (Future<String> f : pool.invokeAll(tasks)) {
+				String error = f.get();
+				if(error!=null) {
+					errors.add(error);
+				}
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Error compiling hooks of module " + module, e);
+		} finally {
+			pool.shutdown();
+		}
+		
+		if(!errors.isEmpty()) {
+			StringBuilder msg = new StringBuilder(errors.size() + " hook(s) could not be compiled:");
+			errors.stream().sorted().forEach(e -> msg.append("\n").append(e));
+			throw new RuntimeException(msg.toString());
+		}
+	}
+
+	/** @return the error message or null whenever it was compiled successfully */
+	private String compile(Path module, Path hook) {
+		LOGGER.fine("\tCompiling hook " + hook);
+		try {
+			if(isModuleHook(module, hook)) {
+				runtime.load(HookEvaluator.buildScript(hook), hook, ModuleHook.class);
+			} else {
+				runtime.load(HookEvaluator.buildScript(hook), hook, FileHook.class);
+			}
+			return null;
+		} catch (Exception e) {
+			return hook + ": " + e.getMessage();
+		}
+	}
+	
+	private boolean isModuleHook(Path module, Path hook) {
+		return hook.equals(module.resolve(MODULE_HOOK));
+	}
+}
@@ -24,15 +24,17 @@
 package com.datamaio.scd4j.hooks;
 
 import static com.datamaio.scd4j.hooks.HookPreResult.CONTINUE;
+import static com.datamaio.scd4j.hooks.HookProfiler.Phase.FINISH;
+import static com.datamaio.scd4j.hooks.HookProfiler.Phase.POST;
+import static com.datamaio.scd4j.hooks.HookProfiler.Phase.PRE;
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 import com.datamaio.scd4j.conf.Configuration;
 import com.datamaio.scd4j.util.io.FileUtils;
@@ -45,45 +47,55 @@ import com.datamaio.scd4j.util.io.FileUtils;
  */
 public abstract class HookEvaluator {
 	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	protected static final String CONF = "conf";
+	protected static final String SEPARATOR = "--------------------------";
 	
 	private Path groovyPath;
-	private GroovyShell shell;
+	private Configuration conf;
+	private Binding binding;
 	protected String script;
+	private HookRuntime runtime;
+	private Hook hook;
 	
-	public HookEvaluator(Path groovyPath, Map<String, Object> binds, Configuration conf) {
+	/** Used by evaluators of entries which do not have hooks at all */
+	protected HookEvaluator() {
+	}
+	
+	public HookEvaluator(Path groovyPath, Map<String, Object> binds, Configuration conf, HookRuntime runtime) {
 		this.groovyPath = groovyPath;
+		this.conf = conf;
+		this.runtime = runtime;
 		
 		binds = buildBinding(binds, conf);
-		this.shell = createShell(binds, conf);
-		this.script = readScript(binds);
+		this.binding = createBinding(binds);
+		this.script = Files.exists(groovyPath) ? buildScript(groovyPath) : null;
 	}
 
 	private Map<String, Object> buildBinding(Map<String, Object> binds, Configuration conf) {
-		binds.put("conf", conf);
+		binds.put(CONF, conf);
 		return binds;
 	}
 
-	private String readScript(Map<String, Object> binds) {
-		if( Files.exists(groovyPath) ) {	
-			StringBuilder buff = new StringBuilder(400);
-			buff.append("import static com.datamaio.scd4j.hooks.HookPreResult.CONTINUE;")
-				.append("import static com.datamaio.scd4j.hooks.HookPreResult.ABORT;")
-				.append("import static com.datamaio.scd4j.hooks.HookPreResult.SKIP_FILE;")
-				.append("import java.nio.file.*;")
-				.append("import java.io.*;");
-			for (String b : binds.keySet()) {
-				buff.append("set" + b.substring(0,1).toUpperCase() + b.substring(1) + "(" + b + ");");
-			}
-			buff.append(FileUtils.read(groovyPath));
-			return buff.toString();
-		}
-		
-		return null;
+	/**
+	 * Builds the script actually compiled for the given hook file. It does
+	 * not depend on the bindings (see {@link #init(Hook)}), so that the very
+	 * same text (and therefore the same {@link HookCache} key) is produced at
+	 * build time and at install time.
+	 */
+	public static String buildScript(Path groovyPath) {
+		StringBuilder buff = new StringBuilder(400);
+		buff.append("import static com.datamaio.scd4j.hooks.HookPreResult.CONTINUE;")
+			.append("import static com.datamaio.scd4j.hooks.HookPreResult.ABORT;")
+			.append("import static com.datamaio.scd4j.hooks.HookPreResult.SKIP_FILE;")
+			.append("import java.nio.file.*;")
+			.append("import java.io.*;");
+		buff.append(FileUtils.read(groovyPath));
+		return buff.toString();
 	}
 
 	public boolean pre(){
 		if(exists()) {
-			return CONTINUE.equals((HookPreResult) evaluate("_pre"));
+			return runtime.getProfiler().profile(groovyPath, PRE, () -> CONTINUE.equals(hook()._pre()));
 		}
 		
 		return true;
@@ -91,40 +103,54 @@ public abstract class HookEvaluator {
 	
 	public void post(){
 		if(exists()) {
-			evaluate("_post");
+			runtime.getProfiler().profile(groovyPath, POST, () -> hook()._post());
 		}
 	}
 	
 	public void finish(){
 		if(exists()) {
-			evaluate("_finish");
+			runtime.getProfiler().profile(groovyPath, FINISH, () -> hook()._finish());
 		}
-		LOGGER.info("--------------------------" );
+		LOGGER.info(SEPARATOR);
 	}
 	
 	private boolean exists() {
 		return script!=null;
 	}
 
-	private Object evaluate(String action) {
-		String fullScript = script + "\n " 
-						  + action + "();";
-		String fileName = groovyPath.getFileName().toString();
-		return shell.evaluate(fullScript, fileName);
+	/**
+	 * The script is compiled only once (see {@link HookRuntime}) and its body
+	 * (which registers the <code>pre{..}</code> and <code>post{..}</code>
+	 * closures) is executed only once. All phases are then called on the very
+	 * same instance.
+	 */
+	private Hook hook() {
+		if(hook==null) {
+			Class<? extends Hook> clazz = runtime.load(script, groovyPath, getScriptBaseClass());
+			hook = (Hook) InvokerHelper.createScript(clazz, binding);
+			init(hook);
+			hook.run();
+		}
+		return hook;
 	}
 	
-	private GroovyShell createShell(Map<String, Object> binds, Configuration conf) {
-		CompilerConfiguration configuration = new CompilerConfiguration();
-		configuration.setScriptBaseClass(getScriptBaseClass());
+	private Binding createBinding(Map<String, Object> binds) {
 		Binding binding = new Binding();
 		for (String b : binds.keySet()) {
 			binding.setProperty(b, binds.get(b));
 		}
-		ClassLoader loader = this.getClass().getClassLoader();
-		return new GroovyShell(loader, binding, configuration);
+		return binding;
+	}
+
+	/** 
+	 * Sets the hook variables before running the script body. It is done here
+	 * (and not by the script itself) so that hooks can be statically compiled.
+	 */
+	protected void init(Hook hook) {
+		hook.setConf(conf);
 	}
 
-	protected abstract String getScriptBaseClass();
+	protected abstract Class<? extends Hook> getScriptBaseClass();
 	
 	@Override
 	public String toString() {
@@ -0,0 +1,219 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.cmd.Command;
+
+/**
+ * Collects, for each hook file, the wall time spent compiling it and running
+ * each of its phases, as well as the processes spawned by it (see
+ * {@link Command#stats()}). The report is written next to the log file at the
+ * end of an installation, so that slow hooks can be spotted.
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookProfiler {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	public enum Phase { COMPILE, PRE, POST, FINISH }
+	
+	private final Map<Path, Profile> profiles = new ConcurrentHashMap<>();
+	
+	/** Records the time spent compiling the given hook */
+	public void compiled(Path hook, long nanos) {
+		profile(hook).add(Phase.COMPILE, nanos, 0, 0);
+	}
+	
+	/** Runs the given phase of the hook and records its wall time and spawned processes */
+	public <T> T profile(Path hook, Phase phase, Supplier<T> action) {
+		Command.Stats before = Command.stats().copy();
+		long start = System.nanoTime();
+		try {
+			return action.get();
+		} finally {
+			long nanos = System.nanoTime() - start;
+			Command.Stats after = Command.stats();
+			profile(hook, phase, nanos, after.getProcesses() - before.getProcesses(), 
+					after.getWaitNanos() - before.getWaitNanos());
+		}
+	}
+	
+	/** Runs the given phase of the hook and records its wall time and spawned processes */
+	public void profile(Path hook, Phase phase, Runnable action) {
+		profile(hook, phase, () -> {
+			action.run();
+			return null;
+		});
+	}
+	
+	void profile(Path hook, Phase phase, long nanos, int processes, long waitNanos) {
+		profile(hook).add(phase, nanos, processes, waitNanos);
+	}
+	
+	private Profile profile(Path hook) {
+		return profiles.computeIfAbsent(hook, Profile::new);
+	}
+	
+	public boolean isEmpty() {
+		return profiles.isEmpty();
+	}
+	
+	/** Profiles sorted by total time, the slowest first */
+	public List<Profile> getProfiles() {
+		return profiles.values().stream()
+				.sorted(comparing(Profile::getTotalNanos).reversed().thenComparing(p -> p.getHook().toString()))
+				.collect(toList());
+	}
+	
+	/** 
+	 * Writes <code>&lt;log&gt;.hooks.txt</code> and <code>&lt;log&gt;.hooks.json</code>
+	 * in the directory of the given log file. Failures are only logged, as the
+	 * installation itself has already finished.
+	 */
+	public void write(Path logFile) {
+		if(isEmpty()) {
+			return;
+		}
+		String name = logFile.getFileName().toString().replaceFirst("\\.log$", "");
+		Path txt = logFile.resolveSibling(name + ".hooks.txt");
+		Path json = logFile.resolveSibling(name + ".hooks.json");
+		try {
+			Files.createDirectories(txt.getParent());
+			Files.write(txt, toText().getBytes(StandardCharsets.UTF_8));
+			Files.write(json, toJson().getBytes(StandardCharsets.UTF_8));
+			LOGGER.info("Hook profile written to " + txt);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Hook profile could not be written to " + txt, e);
+		}
+	}
+	
+	public String toText() {
+		StringBuilder buff = new StringBuilder();
+		buff.append("Hook profile (milliseconds, slowest first)").append(System.lineSeparator());
+		buff.append(String.format("%10s %10s %10s %10s %10s %10s %6s  %s", 
+				"TOTAL", "COMPILE", "PRE", "POST", "FINISH", "CMD_WAIT", "CMDS", "HOOK")).append(System.lineSeparator());
+		for (Profile p : getProfiles()) {
+			buff.append(String.format(Locale.ROOT, "%10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %6d  %s", 
+					millis(p.getTotalNanos()), millis(p.getNanos(Phase.COMPILE)), millis(p.getNanos(Phase.PRE)),
+					millis(p.getNanos(Phase.POST)), millis(p.getNanos(Phase.FINISH)), millis(p.getWaitNanos()),
+					p.getProcesses(), p.getHook()));
+			buff.append(System.lineSeparator());
+		}
+		return buff.toString();
+	}
+	
+	public String toJson() {
+		StringBuilder buff = new StringBuilder("[");
+		String sep = "";
+		for (Profile p : getProfiles()) {
+			buff.append(sep).append("\n  {\"hook\":\"").append(escape(p.getHook().toString())).append('"')
+				.append(", \"totalMs\":").append(format(millis(p.getTotalNanos())));
+			for (Phase phase : Phase.values()) {
+				buff.append(", \"").append(phase.name().toLowerCase(Locale.ROOT)).append("Ms\":")
+					.append(format(millis(p.getNanos(phase))));
+			}
+			buff.append(", \"commandWaitMs\":").append(format(millis(p.getWaitNanos())))
+				.append(", \"commands\":").append(p.getProcesses())
+				.append('}');
+			sep = ",";
+		}
+		return buff.append("\n]\n").toString();
+	}
+	
+	private static double millis(long nanos) {
+		return nanos / 1_000_000d;
+	}
+	
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+	
+	private static String escape(String s) {
+		StringBuilder buff = new StringBuilder(s.length());
+		for (char c : s.toCharArray()) {
+			if(c=='"' || c=='\\') {
+				buff.append('\\').append(c);
+			} else if(c < 0x20) {
+				buff.append(String.format("\\u%04x", (int) c));
+			} else {
+				buff.append(c);
+			}
+		}
+		return buff.toString();
+	}
+	
+	/** Accumulated numbers of a single hook file */
+	public static final class Profile {
+		private final Path hook;
+		private final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+		private int processes;
+		private long waitNanos;
+		
+		Profile(Path hook) {
+			this.hook = hook;
+		}
+		
+		synchronized void add(Phase phase, long nanos, int processes, long waitNanos) {
+			this.nanos.merge(phase, nanos, Long::sum);
+			this.processes += processes;
+			this.waitNanos += waitNanos;
+		}
+		
+		public Path getHook() {
+			return hook;
+		}
+		
+		public synchronized long getNanos(Phase phase) {
+			return nanos.getOrDefault(phase, 0L);
+		}
+		
+		public synchronized long getTotalNanos() {
+			return nanos.values().stream().mapToLong(Long::longValue).sum();
+		}
+		
+		public synchronized int getProcesses() {
+			return processes;
+		}
+		
+		public synchronized long getWaitNanos() {
+			return waitNanos;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import groovy.lang.GroovyClassLoader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.hooks.HookCache.CompiledHook;
+import com.datamaio.scd4j.hooks.HookCache.HookClassLoader;
+
+/**
+ * Runtime shared by all hooks of one execution (see
+ * {@link com.datamaio.scd4j.EnvConfigurator#execute()}).
+ * <p>
+ * All hook classes are defined by one single class loader, and compiled with
+ * one single {@link CompilerConfiguration} per hook base class. Hooks with
+ * exactly the same content share the same class. Once the execution
+ * finishes, {@link #close()} must be called in order to release the loaders
+ * and let the JVM unload all hook classes.
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookRuntime implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private final HookCache cache;
+	private final boolean compileStatic;
+	private final Map<Class<? extends Hook>, CompilerConfiguration> configurations = new ConcurrentHashMap<>();
+	private final Map<String, Class<? extends Hook>> classes = new HashMap<>();
+	private final HookProfiler profiler = new HookProfiler();
+	private GroovyClassLoader compileLoader;
+	private HookClassLoader loader;
+	
+	public HookRuntime(Configuration conf) {
+		this(new HookCache(HookCache.DEFAULT_DIR, conf.getHooksDir()), conf.isHookCompileStatic());
+	}
+	
+	public HookRuntime(HookCache cache) {
+		this(cache, false);
+	}
+	
+	public HookRuntime(HookCache cache, boolean compileStatic) {
+		this.cache = cache;
+		this.compileStatic = compileStatic;
+		this.loader = new HookClassLoader(Hook.class.getClassLoader());
+	}
+	
+	/** 
+	 * Returns the class of the given hook script. It is compiled (or read
+	 * from the cache) only once per runtime.
+	 * <p>
+	 * This method is thread safe and different hooks are compiled concurrently
+	 * (see {@link HookCompiler}).
+	 */
+	public Class<? extends Hook> load(String script, Path groovyPath, Class<? extends Hook> baseClass) {
+		String key = HookCache.key(script, baseClass, compileStatic);
+		synchronized (this) {
+			checkOpen();
+			Class<? extends Hook> clazz = classes.get(key);
+			if(clazz!=null) {
+				return clazz;
+			}
+		}
+		
+		String fileName = groovyPath.getFileName().toString();
+		CompiledHook compiled = cache.get(key, () -> {
+			long start = System.nanoTime();
+			try {
+				return compile(key, script, fileName, baseClass);
+			} finally {
+				profiler.compiled(groovyPath, System.nanoTime() - start);
+			}
+		});
+		
+		synchronized (this) {
+			checkOpen();
+			Class<? extends Hook> clazz = classes.get(key);
+			if(clazz==null) {
+				clazz = loader.define(compiled);
+				classes.put(key, clazz);
+			}
+			return clazz;
+		}
+	}
+
+	private void checkOpen() {
+		if(loader==null) {
+			throw new IllegalStateException("Hook runtime is already closed");
+		}
+	}
+
+	private CompiledHook compile(String key, String script, String fileName, Class<? extends Hook> baseClass) {
+		CompilerConfiguration configuration = configurations.computeIfAbsent(baseClass, c -> HookCache.configuration(c, compileStatic));
+		return HookCache.compile(key, script, fileName, configuration, compileLoader());
+	}
+	
+	private synchronized GroovyClassLoader compileLoader() {
+		checkOpen();
+		if(compileLoader==null) {
+			compileLoader = new GroovyClassLoader(Hook.class.getClassLoader());
+		}
+		return compileLoader;
+	}
+	
+	/** Profile of the hooks compiled and executed with this runtime */
+	public HookProfiler getProfiler() {
+		return profiler;
+	}
+	
+	/** Number of distinct hook classes loaded so far */
+	public synchronized int size() {
+		return classes.size();
+	}
+	
+	/** Releases all loaded hook classes */
+	@Override
+	public synchronized void close() {
+		classes.clear();
+		configurations.clear();
+		loader = null;
+		if(compileLoader!=null) {
+			try {
+				compileLoader.clearCache();
+				compileLoader.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Error closing hook class loader", e);
+			}
+			compileLoader = null;
+		}
+	}
+}
@@ -31,10 +31,14 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.hooks.Hook;
 import com.datamaio.scd4j.hooks.HookEvaluator;
+import com.datamaio.scd4j.hooks.HookRuntime;
 import com.datamaio.scd4j.util.PathHelper;
 
 /**
@@ -43,18 +47,65 @@ import com.datamaio.scd4j.util.PathHelper;
  */
 public class FileHookEvaluator extends HookEvaluator {
     private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    
+    /** 
+     * Shared evaluator of files without <code>.hook</code>. It does nothing at
+     * all, not even logging (see {@link #log(Path, PathHelper, String...)})
+     */
+    public static final FileHookEvaluator NONE = new FileHookEvaluator() {
+    	@Override
+    	public boolean pre() {
+    		return true;
+    	}
+    	@Override
+    	public void post() {
+    	}
+    	@Override
+    	public void finish() {
+    	}
+    	@Override
+    	public String toString() {
+    		return "NONE";
+    	}
+    };
+    
     private Path src;
+    private Path target;
     private PathHelper pathHelper;
     
-	public FileHookEvaluator(final Path src, final Path target, final Configuration conf) {
-		super(Paths.get(src + HOOK_SUFFIX), buildBinding(src, target), conf);
+	public FileHookEvaluator(final Path src, final Path target, final Configuration conf, final HookRuntime runtime) {
+		super(Paths.get(src + HOOK_SUFFIX), buildBinding(src, target), conf, runtime);
 		this.src = src;
+		this.target = target;
 		this.pathHelper = new PathHelper(conf);
 	}
+	
+	private FileHookEvaluator() {
+	}
+	
+	/**
+	 * Returns the evaluator of the given file. Whenever the file does not have
+	 * a hook (i.e. it is not in the given set of existing hooks), the shared
+	 * {@link #NONE} is returned and no evaluation cost is paid.
+	 */
+	public static FileHookEvaluator of(final Path src, final Path target, final Configuration conf, final Set<Path> hooks, final HookRuntime runtime) {
+		if(!hooks.contains(Paths.get(src + HOOK_SUFFIX))) {
+			return NONE;
+		}
+		return new FileHookEvaluator(src, target, conf, runtime);
+	}
 
 	@Override
-	protected String getScriptBaseClass() {
-		return FileHook.class.getName();
+	protected Class<? extends Hook> getScriptBaseClass() {
+		return FileHook.class;
+	}
+	
+	@Override
+	protected void init(Hook hook) {
+		super.init(hook);
+		FileHook fileHook = (FileHook) hook;
+		fileHook.setSrc(src.toString());
+		fileHook.setTarget(target.toString());
 	}	
 	
 	public boolean pre(){
@@ -79,7 +130,31 @@ public class FileHookEvaluator extends HookEvaluator {
 		return map;
 	}
 
+	/**
+	 * Logs, for a file without hook (see {@link #NONE}), the very same lines
+	 * logged around the given ones by the evaluator of a file with hook. They
+	 * are logged all at once, as workers may be copying files concurrently
+	 */
+	public static void log(final Path src, final PathHelper pathHelper, final String... lines) {
+		if(!LOGGER.isLoggable(Level.INFO)) {
+			return;
+		}
+		synchronized (LOGGER) {
+			LOGGER.info("INSTALLING: " + relativize(src, pathHelper));
+			LOGGER.info(" :PRE");
+			for (String line : lines) {
+				LOGGER.info(line);
+			}
+			LOGGER.info(" :POST");
+			LOGGER.info(SEPARATOR);
+		}
+	}
+
 	private String relativize() {
+		return relativize(src, pathHelper);
+	}
+	
+	private static String relativize(final Path src, final PathHelper pathHelper) {
 		String relative = src.toString();
 		Path p = Paths.get(relative.substring(relative.indexOf(MODULES_FOLDER + File.separator)));
 		String path = p.subpath(2, p.getNameCount()).toString();
@@ -33,7 +33,9 @@ import java.util.Map;
 import java.util.logging.Logger;
 
 import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.hooks.Hook;
 import com.datamaio.scd4j.hooks.HookEvaluator;
+import com.datamaio.scd4j.hooks.HookRuntime;
 import com.datamaio.scd4j.util.io.PathUtils;
 
 /**
@@ -43,16 +45,24 @@ import com.datamaio.scd4j.util.io.PathUtils;
 public class ModuleHookEvaluator extends HookEvaluator {
     private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 	
+	public static final String MODULE_HOOK = "Module" + HOOK_SUFFIX;
+	
 	private final Path moduleDir;
 	
-	public ModuleHookEvaluator(final Configuration conf) {
-		super(buildModuleHookName(conf), buildBinding(conf), conf);
+	public ModuleHookEvaluator(final Configuration conf, final HookRuntime runtime) {
+		super(buildModuleHookName(conf), buildBinding(conf), conf, runtime);
 		this.moduleDir = conf.getModule();
 	}
 
 	@Override
-	protected String getScriptBaseClass() {
-		return ModuleHook.class.getName();
+	protected Class<? extends Hook> getScriptBaseClass() {
+		return ModuleHook.class;
+	}
+	
+	@Override
+	protected void init(Hook hook) {
+		super.init(hook);
+		((ModuleHook) hook).setModuleDir(moduleDir.toString());
 	}	
 	
 	private static Map<String, Object> buildBinding(final Configuration conf) {
@@ -92,6 +102,6 @@ public class ModuleHookEvaluator extends HookEvaluator {
 	}
 	
 	private static Path buildModuleHookName(Configuration conf) {
-		return PathUtils.get(conf.getModule(), "Module" + HOOK_SUFFIX);
+		return PathUtils.get(conf.getModule(), MODULE_HOOK);
 	}	
 }
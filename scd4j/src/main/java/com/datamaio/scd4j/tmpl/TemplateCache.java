@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.tmpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.datamaio.scd4j.util.io.HashUtils;
+
+/**
+ * Compiled templates of a whole run, so that each template is compiled only
+ * once, no matter how many modules, configs or threads merge it (e.g. the
+ * same <code>standalone.xml.tmpl</code> for every node of a cluster).
+ * <p>
+ * Templates are looked up by engine and path. While the size and the last
+ * modified time of a template are the ones it was compiled with, it is not
+ * even read. Otherwise its content hash is checked, and only when the
+ * content has changed it is compiled again and replaces the previous one.
+ * <p>
+ * Compilation happens outside of the map, so that a slow template does not
+ * block others. Two threads may then compile the same template at once, but
+ * only the first one is kept.
+ * 
+ * @author Fernando Rubbo
+ */
+public class TemplateCache {
+	private final Map<String, Compiled> templates = new ConcurrentHashMap<>();
+	
+	/** Returns the compiled template, calling the given compiler only when it is not cached yet */
+	public Object get(String engine, Path path, Function<Path, Object> compiler) {
+		final String key = engine + ":" + path.toAbsolutePath();
+		final BasicFileAttributes attrs = attributes(path);
+		final long size = attrs.size();
+		final long lastModified = attrs.lastModifiedTime().toMillis();
+		
+		final Compiled cached = templates.get(key);
+		if(cached!=null && cached.size==size && cached.lastModified==lastModified) {
+			return cached.template;
+		}
+		
+		final String hash = HashUtils.sha256(path);
+		if(cached!=null && cached.hash.equals(hash)) {
+			// only touched: remember the new attributes so that it is not hashed again
+			templates.replace(key, cached, new Compiled(size, lastModified, hash, cached.template));
+			return cached.template;
+		}
+		
+		final Compiled compiled = new Compiled(size, lastModified, hash, compiler.apply(path));
+		final boolean published = cached==null 
+				? templates.putIfAbsent(key, compiled)==null 
+				: templates.replace(key, cached, compiled);
+		if(!published) {
+			final Compiled other = templates.get(key);
+			if(other!=null && other.hash.equals(hash)) {
+				return other.template;
+			}
+		}
+		return compiled.template;
+	}
+	
+	/** Number of compiled templates */
+	public int size() {
+		return templates.size();
+	}
+	
+	private static BasicFileAttributes attributes(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static final class Compiled {
+		private final long size;
+		private final long lastModified;
+		private final String hash;
+		private final Object template;
+		
+		Compiled(long size, long lastModified, String hash, Object template) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.template = template;
+		}
+	}
+}
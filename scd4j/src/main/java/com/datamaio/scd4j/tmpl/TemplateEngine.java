@@ -31,11 +31,25 @@ import com.datamaio.scd4j.tmpl.impl.MustacheTemplateEngine;
 import com.datamaio.scd4j.tmpl.impl.VelocityTemplateEngine;
 
 /**
+ * Engines are not thread safe. However, whenever they are built with the same
+ * {@link TemplateCache}, each template is compiled only once and shared by all of them.
+ * 
  * @author Fernando Rubbo
  */
 public abstract class TemplateEngine {
+	private TemplateCache cache;
 	
 	public static TemplateEngine get(TemplateEngineConfig conf) {
+		return get(conf, null);
+	}
+	
+	public static TemplateEngine get(TemplateEngineConfig conf, TemplateCache cache) {
+		TemplateEngine engine = create(conf);
+		engine.cache = cache;
+		return engine;
+	}
+	
+	private static TemplateEngine create(TemplateEngineConfig conf) {
 		if(GroovyTemplateEngine.NAME.equalsIgnoreCase(conf.getName())){
 			return new GroovyTemplateEngine();
 		} else if(HandlebarsTemplateEngine.NAME.equalsIgnoreCase(conf.getName())){
@@ -49,5 +63,15 @@ public abstract class TemplateEngine {
 				+ "' not found! Check options in package 'com.datamaio.scd4j.tmpl.impl'");
 	}
 	
-	public abstract Template createTemplate(Path path);
+	/** Compiles the given template, or takes it from the cache whenever there is one */
+	public Template createTemplate(Path path) {
+		Object compiled = cache==null ? compile(path) : cache.get(getClass().getName(), path, this::compile);
+		return use(compiled);
+	}
+	
+	/** Compiles the given template. The result must be thread safe, as it may be shared (see {@link TemplateCache}) */
+	protected abstract Object compile(Path path);
+	
+	/** Uses the given compiled template (see {@link #compile(Path)}) for the next merges */
+	protected abstract Template use(Object compiled);
 }
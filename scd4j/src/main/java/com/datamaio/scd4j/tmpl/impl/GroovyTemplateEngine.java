@@ -55,12 +55,17 @@ public class GroovyTemplateEngine extends TemplateEngine implements Template, Wr
 	private groovy.lang.Writable writable; 
 	
 	@Override
-	public Template createTemplate(Path path) {
+	protected Object compile(Path path) {
 		try {
-			this.template = engine.createTemplate(path.toFile());
+			return engine.createTemplate(path.toFile());
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
+	}
+	
+	@Override
+	protected Template use(Object compiled) {
+		this.template = (groovy.text.Template) compiled;
 		return this;
 	}
 
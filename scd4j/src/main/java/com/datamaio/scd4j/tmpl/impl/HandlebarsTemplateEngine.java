@@ -65,12 +65,17 @@ public class HandlebarsTemplateEngine extends TemplateEngine implements Template
 	private Map<String, ? extends Object> binding;
 		
 	@Override
-	public Template createTemplate(Path path) {
+	protected Object compile(Path path) {
 		try {
-			this.template = HANDLEBARS.compile(new URLTemplateSource(path.toString(), path.toUri().toURL()));
+			return HANDLEBARS.compile(new URLTemplateSource(path.toString(), path.toUri().toURL()));
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
+	}
+	
+	@Override
+	protected Template use(Object compiled) {
+		this.template = (com.github.jknack.handlebars.Template) compiled;
 		return this;
 	}
 
@@ -74,15 +74,20 @@ public class MustacheTemplateEngine extends TemplateEngine implements Template,
 	private Map<String, ? extends Object> binding;
 	
 	@Override
-	public Template createTemplate(Path path) {
+	protected Object compile(Path path) {
 		try {
 			Reader reader = new FileReader(path.toFile());
-			this.mustache = FACTORY.compile(reader, path.toString());
-			return this;
+			return FACTORY.compile(reader, path.toString());
 		} catch (FileNotFoundException e) {
 			throw new RuntimeException(e);
 		}
 	}
+	
+	@Override
+	protected Template use(Object compiled) {
+		this.mustache = (Mustache) compiled;
+		return this;
+	}
 
 	@Override
 	public Writable make() {
@@ -59,8 +59,13 @@ public class VelocityTemplateEngine extends TemplateEngine implements Template,
     private VelocityContext context;
 	
 	@Override
-	public Template createTemplate(Path path) {		
-		this.template = Velocity.getTemplate(path.toAbsolutePath().toString());
+	protected Object compile(Path path) {		
+		return Velocity.getTemplate(path.toAbsolutePath().toString());
+	}
+	
+	@Override
+	protected Template use(Object compiled) {
+		this.template = (org.apache.velocity.Template) compiled;
 		return this;
 	}
 
@@ -23,46 +23,252 @@
  */
 package com.datamaio.scd4j.util;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 import com.datamaio.scd4j.conf.Configuration;
-import com.datamaio.scd4j.util.io.FileUtils;
-import com.datamaio.scd4j.util.io.PathUtils;
 
 /**
+ * Backups the targets that are replaced or deleted. Their contents are kept
+ * in a {@link BackupStore} shared by all executions, so that unchanged
+ * contents are stored only once, and each execution only records which
+ * contents its targets had (see {@link BackupRun}).
+ * <p>
+ * The backups that are no more to be kept (by count, age and total size)
+ * are removed by {@link #retain()}, as well as the contents no other backup
+ * uses. From its first backup up to being closed, an execution holds the
+ * {@link BackupLock}, so that no other execution removes its contents.
  * 
  * @author Fernando Rubbo
  * @author Mateus M. da Costa
  */
-public class BackupHelper {
-	private Path dir;
+public class BackupHelper implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	
+	private Path root;
+	private BackupStore store;
+	private BackupRun run;
+	private volatile BackupLock lock;
+	private int keep;
+	private int maxAge;
+	private long maxSize;
 
 	public BackupHelper(Configuration conf) {
 		init(conf);
 	}
 
 	public void init(Configuration conf) {
-		this.dir = conf.getBackupDir();
+		this.root = conf.getBackupStoreDir();
+		this.store = new BackupStore(root, conf.isBackupCompressed(), conf.getCopyTransferThreshold());
+		this.run = new BackupRun(conf.getBackupDir());
+		this.keep = conf.getBackupKeep();
+		this.maxAge = conf.getBackupMaxAge();
+		this.maxSize = conf.getBackupMaxSize();
 	}
 
 	public void backupFileOrDir(Path fileOrDir) {
-		if(Files.exists(fileOrDir)) {
-			Path bkp = PathUtils.get(dir, fileOrDir);
-			if(Files.isDirectory(bkp)) {
-				FileUtils.createDirectories(bkp);
-			} else {
-				FileUtils.createDirectories(bkp.getParent());
+		backupFileOrDir(fileOrDir, false);
+	}
+	
+	/** 
+	 * @param replaced
+	 *            whether it is going to be deleted or replaced by a rename
+	 *            right after (see {@link BackupStore#put(Path, boolean)})
+	 */
+	public void backupFileOrDir(Path fileOrDir, final boolean replaced) {
+		lock();
+		if(Files.isDirectory(fileOrDir)) {
+			try {
+				Files.walkFileTree(fileOrDir, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+						run.dir(dir);
+						return FileVisitResult.CONTINUE;
+					}
+					
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+						backupFile(file, replaced);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				throw new RuntimeException(e);
 			}
-			FileUtils.copy(fileOrDir, bkp);
+		} else if(Files.exists(fileOrDir)) {
+			backupFile(fileOrDir, replaced);
 		}
 	}
 
+	/** Targets that do not exist yet are recorded as added, so that a rollback removes them */
 	public void backupFile(final Path file) {
+		backupFile(file, false);
+	}
+	
+	/** 
+	 * @param replaced
+	 *            whether it is going to be deleted or replaced by a rename
+	 *            right after (see {@link BackupStore#put(Path, boolean)})
+	 */
+	public void backupFile(final Path file, final boolean replaced) {
+		backupFile(file, replaced, null);
+	}
+	
+	/** 
+	 * @param hash
+	 *            hash of the file content, whenever already known, so that it
+	 *            is not read again (see {@link BackupStore#put(Path, boolean, String)})
+	 */
+	public void backupFile(final Path file, final boolean replaced, final String hash) {
+		lock();
 		if(Files.exists(file)) {
-			Path bkp = PathUtils.get(dir, file);
-			FileUtils.createDirectories(bkp.getParent());
-			FileUtils.copyFile(file, bkp);
+			run.file(file, store.put(file, replaced, hash));
+		} else {
+			run.added(file);
+		}
+	}
+	
+	/** 
+	 * Records that the given directory, which does not exist yet, is going to
+	 * be created, so that a rollback removes it (if still empty)
+	 */
+	public void backupAddedDir(final Path dir) {
+		lock();
+		run.addedDir(dir);
+	}
+	
+	/** The backup of this execution */
+	public BackupRun getRun() {
+		return run;
+	}
+	
+	public BackupStore getStore() {
+		return store;
+	}
+
+	/** Finishes the backup of this execution. It may still be continued afterwards */
+	@Override
+	public void close() {
+		if(run!=null) {
+			run.close();
+		}
+		unlock();
+	}
+	
+	private void lock() {
+		if(lock==null) {
+			synchronized (this) {
+				if(lock==null) {
+					lock = BackupLock.acquire(root);
+				}
+			}
+		}
+	}
+	
+	private synchronized void unlock() {
+		if(lock!=null) {
+			lock.release();
+			lock = null;
+		}
+	}
+
+	/**
+	 * Removes the backups that are no more to be kept, as well as the contents
+	 * no other backup uses. The backup of this execution is always kept.
+	 * Whenever other executions (of this or of other processes) are taking
+	 * backups, nothing is removed: a next execution will do it
+	 */
+	public void retain() {
+		if(run==null) {
+			return;
+		}
+		lock();
+		if(!lock.exclusively(this::expire)) {
+			LOGGER.info("Backups are being taken by another execution. Old ones will be removed by a next execution");
+		}
+	}
+
+	private void expire() {
+		List<BackupRun> runs = BackupRun.list(root);
+		Map<BackupRun, Set<String>> hashes = new HashMap<>();
+		Map<String, Integer> refs = new HashMap<>();
+		for (BackupRun r : runs) {
+			hashes.put(r, r.hashes());
+			hashes.get(r).forEach(h -> refs.merge(h, 1, Integer::sum));
+		}
+		
+		Set<BackupRun> expired = new LinkedHashSet<>();
+		if(keep > 0) {
+			Map<String, Integer> newer = new HashMap<>();
+			for (int i = runs.size() - 1; i >= 0; i--) {
+				BackupRun r = runs.get(i);
+				if(newer.merge(r.getName(root), 1, Integer::sum) > keep) {
+					expired.add(r);
+				}
+			}
+		}
+		if(maxAge > 0) {
+			long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAge);
+			runs.stream().filter(r -> r.getTime() < oldest).forEach(expired::add);
+		}
+		expired.remove(run);
+		expired.forEach(r -> release(r, hashes, refs));
+		
+		Map<String, Long> sizes = store.sizes();
+		if(maxSize > 0) {
+			long size = 0;
+			for (String hash : refs.keySet()) {
+				size += sizes.getOrDefault(hash, 0L);
+			}
+			List<BackupRun> kept = new ArrayList<>(runs);
+			kept.removeAll(expired);
+			kept.remove(run);
+			for (BackupRun r : kept) {
+				if(size <= maxSize) {
+					break;
+				}
+				for (String hash : release(r, hashes, refs)) {
+					size -= sizes.getOrDefault(hash, 0L);
+				}
+				expired.add(r);
+			}
+		}
+		
+		int deleted = 0;
+		for (String hash : sizes.keySet()) {
+			if(!refs.containsKey(hash)) {
+				store.delete(hash);
+				deleted++;
+			}
+		}
+		if(!expired.isEmpty() || deleted > 0) {
+			LOGGER.info("Backups of " + expired.size() + " executions and " + deleted + " contents no more used were removed");
+		}
+	}
+
+	/** Deletes the given backup. Returns the contents no other backup uses */
+	private List<String> release(BackupRun r, Map<BackupRun, Set<String>> hashes, Map<String, Integer> refs) {
+		r.delete();
+		List<String> released = new ArrayList<>();
+		for (String hash : hashes.get(r)) {
+			if(refs.merge(hash, -1, Integer::sum) == 0) {
+				refs.remove(hash);
+				released.add(hash);
+			}
 		}
+		return released;
 	}
 }
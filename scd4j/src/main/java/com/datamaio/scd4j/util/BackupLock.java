@@ -0,0 +1,137 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lock of a backup root (i.e. of its {@link BackupStore}). Every execution
+ * taking backups holds it shared, from start to end, so that the retention,
+ * which takes it exclusively, never removes contents that a running
+ * execution has stored, but not yet recorded in its {@link BackupRun}.
+ * <p>
+ * File locks are held by the whole JVM, so executions of the same JVM share
+ * a single one. This class is thread safe.
+ * 
+ * @author Fernando Rubbo
+ */
+public final class BackupLock {
+	private static final String FILE = ".lock";
+	private static final Map<Path, BackupLock> LOCKS = new HashMap<>();
+	
+	private final Path root;
+	private FileChannel channel;
+	private FileLock lock;
+	private int executions;
+	
+	private BackupLock(Path root) {
+		this.root = root;
+	}
+	
+	/** Takes the lock of the given root, shared. It waits while the retention is running */
+	public static BackupLock acquire(Path root) {
+		synchronized (LOCKS) {
+			BackupLock lock = LOCKS.computeIfAbsent(root.toAbsolutePath().normalize(), BackupLock::new);
+			if(lock.executions == 0) {
+				try {
+					Files.createDirectories(lock.root);
+					lock.channel = FileChannel.open(lock.root.resolve(FILE), CREATE, READ, WRITE);
+					lock.lock = lock.channel.lock(0, Long.MAX_VALUE, true);
+				} catch (IOException e) {
+					lock.close();
+					throw new RuntimeException("Error locking backups of " + root, e);
+				}
+			}
+			lock.executions++;
+			return lock;
+		}
+	}
+	
+	/** Releases the lock taken by {@link #acquire(Path)} */
+	public void release() {
+		synchronized (LOCKS) {
+			if(--executions == 0) {
+				close();
+				LOCKS.remove(root);
+			}
+		}
+	}
+	
+	/**
+	 * Runs the given action only when no other execution, of this or of other
+	 * processes, holds the lock. Returns whether it was run
+	 */
+	public boolean exclusively(Runnable action) {
+		synchronized (LOCKS) {
+			if(executions > 1) {
+				return false;
+			}
+			try {
+				lock.release();
+				FileLock exclusive = channel.tryLock(0, Long.MAX_VALUE, false);
+				if(exclusive == null) {
+					return false;
+				}
+				try {
+					action.run();
+					return true;
+				} finally {
+					exclusive.release();
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Error locking backups of " + root, e);
+			} finally {
+				try {
+					lock = channel.lock(0, Long.MAX_VALUE, true);
+				} catch (IOException e) {
+					throw new RuntimeException("Error locking backups of " + root, e);
+				}
+			}
+		}
+	}
+	
+	private void close() {
+		try {
+			if(channel != null) {
+				// releases the lock as well
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			channel = null;
+			lock = null;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * What an execution has backed up: for each original path, its content
+ * (i.e. the hash of a {@link BackupStore} object) and its permissions.
+ * Directories are recorded as well, so that deleted ones can be recreated,
+ * and so are the files and directories the execution adds, so that they
+ * can be removed.
+ * <p>
+ * Entries are appended (and flushed) as soon as they are backed up, so that
+ * the backup of a failed execution is not lost. This class is thread safe.
+ * 
+ * @author Fernando Rubbo
+ */
+public class BackupRun implements Closeable {
+	public static final String MANIFEST = "backup.manifest";
+	private static final String HEADER = "#scd4j-backup-v1";
+	private static final String SEP = "\t";
+	private static final String NONE = "-";
+	private static final String TIMESTAMP = "_\\d{14}$";
+	private static final Pattern EXECUTION = Pattern.compile(".*" + TIMESTAMP);
+	
+	public enum Kind {
+		/** A file, with its content */
+		FILE, 
+		/** A directory, which content is recorded by its own entries */
+		DIR, 
+		/** A file that did not exist before the execution */
+		ADDED,
+		/** A directory that did not exist before the execution */
+		ADDED_DIR
+	}
+	
+	private final Path dir;
+	private BufferedWriter out;
+
+	public BackupRun(Path dir) {
+		this.dir = dir;
+	}
+	
+	/** 
+	 * Backups of all executions under the given root, oldest first. Neither
+	 * the contents nor the execution directories are walked into (the later
+	 * may be whole copies of the target, made by previous scd4j versions)
+	 */
+	public static List<BackupRun> list(Path root) {
+		final List<BackupRun> runs = new ArrayList<>();
+		if(Files.isDirectory(root)) {
+			try {
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+						if(Files.exists(dir.resolve(MANIFEST))) {
+							runs.add(new BackupRun(dir));
+							return FileVisitResult.SKIP_SUBTREE;
+						}
+						boolean objects = dir.equals(root.resolve(BackupStore.OBJECTS_FOLDER));
+						boolean execution = EXECUTION.matcher(dir.getFileName().toString()).matches();
+						return objects || execution ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		runs.sort(Comparator.comparingLong(BackupRun::getTime));
+		return runs;
+	}
+	
+	/** Module and config names of this execution (i.e. its directory, relative to the given root, without the timestamp) */
+	public String getName(Path root) {
+		return root.relativize(dir).toString().replaceFirst(TIMESTAMP, "");
+	}
+
+	public Path getDir() {
+		return dir;
+	}
+	
+	/** When this backup was last written */
+	public long getTime() {
+		return dir.resolve(MANIFEST).toFile().lastModified();
+	}
+	
+	/** Records the given file, whose content was stored with the given hash */
+	public void file(Path file, String hash) {
+		record(new Entry(Kind.FILE, hash, permissions(file), file));
+	}
+
+	/** Records the given directory */
+	public void dir(Path dir) {
+		record(new Entry(Kind.DIR, null, permissions(dir), dir));
+	}
+	
+	/** Records that the given file is created by the execution */
+	public void added(Path file) {
+		record(new Entry(Kind.ADDED, null, null, file));
+	}
+	
+	/** Records that the given directory is created by the execution */
+	public void addedDir(Path dir) {
+		record(new Entry(Kind.ADDED_DIR, null, null, dir));
+	}
+
+	private synchronized void record(Entry entry) {
+		try {
+			if(out==null) {
+				Files.createDirectories(dir);
+				Path manifest = dir.resolve(MANIFEST);
+				boolean exists = Files.exists(manifest);
+				out = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8, CREATE, APPEND);
+				if(!exists) {
+					out.write(HEADER);
+					out.newLine();
+				}
+			}
+			out.write(entry.toLine());
+			out.newLine();
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** All recorded entries, in the order they were backed up */
+	public List<Entry> load() {
+		List<Entry> entries = new ArrayList<>();
+		Path manifest = dir.resolve(MANIFEST);
+		if(Files.exists(manifest)) {
+			try (BufferedReader in = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if(!line.isEmpty() && !line.startsWith("#")) {
+						entries.add(Entry.of(line));
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return entries;
+	}
+	
+	/** Hashes of all backed up contents */
+	public Set<String> hashes() {
+		Set<String> hashes = new HashSet<>();
+		for (Entry entry : load()) {
+			if(entry.getHash()!=null) {
+				hashes.add(entry.getHash());
+			}
+		}
+		return hashes;
+	}
+	
+	/** Deletes this backup (but not its contents, which may be shared) */
+	public void delete() {
+		close();
+		FileUtils.delete(dir);
+	}
+
+	@Override
+	public synchronized void close() {
+		if(out!=null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			} finally {
+				out = null;
+			}
+		}
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof BackupRun && dir.equals(((BackupRun) obj).dir);
+	}
+	
+	@Override
+	public int hashCode() {
+		return dir.hashCode();
+	}
+
+	private static String permissions(Path path) {
+		try {
+			if(Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				return PosixFilePermissions.toString(Files.getPosixFilePermissions(path));
+			}
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public static class Entry {
+		private final Kind kind;
+		private final String hash;
+		private final String permissions;
+		private final Path path;
+
+		Entry(Kind kind, String hash, String permissions, Path path) {
+			this.kind = kind;
+			this.hash = hash;
+			this.permissions = permissions;
+			this.path = path;
+		}
+		
+		static Entry of(String line) {
+			String[] fields = line.split(SEP, 4);
+			return new Entry(Kind.valueOf(fields[0]), orNull(fields[1]), orNull(fields[2]), Paths.get(fields[3]));
+		}
+		
+		String toLine() {
+			return kind + SEP + orNone(hash) + SEP + orNone(permissions) + SEP + path;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+		
+		/** Hash of the content (see {@link BackupStore}). Directories have none */
+		public String getHash() {
+			return hash;
+		}
+		
+		/** Posix permissions, or <code>null</code> if not supported */
+		public Set<PosixFilePermission> getPermissions() {
+			return permissions==null ? null : PosixFilePermissions.fromString(permissions);
+		}
+
+		public Path getPath() {
+			return path;
+		}
+		
+		private static String orNull(String field) {
+			return NONE.equals(field) ? null : field;
+		}
+		
+		private static String orNone(String field) {
+			return field==null ? NONE : field;
+		}
+	}
+}
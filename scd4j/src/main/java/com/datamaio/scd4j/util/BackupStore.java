@@ -0,0 +1,242 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.datamaio.scd4j.util.io.AtomicWriter;
+import com.datamaio.scd4j.util.io.FileUtils;
+import com.datamaio.scd4j.util.io.HashUtils;
+
+/**
+ * Content addressed store of backed up files. Each distinct content is kept
+ * only once, named by its hash, no matter how many executions have backed
+ * it up. Objects are gzip compressed, unless compression is disabled: then
+ * they are hard links to files about to be replaced by a rename or deleted
+ * whenever possible (see {@link #put(Path, boolean)}), or plain copies.
+ * <p>
+ * A hard link shares its content with a target, which someone may still
+ * change in place. Therefore uncompressed objects are hashed again before
+ * being reused while they are linked, and always before being restored.
+ * <p>
+ * Objects are written aside and renamed, so this class is thread safe.
+ * 
+ * @author Fernando Rubbo
+ */
+public class BackupStore {
+	public static final String OBJECTS_FOLDER = "objects";
+	private static final String GZ = ".gz";
+	private static final String TMP = ".scd4j-tmp";
+	
+	private final Path dir;
+	private final boolean compress;
+	private final long transferThreshold;
+
+	public BackupStore(Path dir, boolean compress, long transferThreshold) {
+		this.dir = dir.resolve(OBJECTS_FOLDER);
+		this.compress = compress;
+		this.transferThreshold = transferThreshold;
+	}
+
+	/**
+	 * Stores a copy of the content of the given file and returns its hash.
+	 * The file is hashed first (i.e. only read), so that contents already
+	 * stored are neither compressed nor written again
+	 */
+	public String put(Path file) {
+		return put(file, false);
+	}
+	
+	/**
+	 * Just like {@link #put(Path)}, but when compression is disabled and the
+	 * file is <code>replaced</code> the object is a hard link to it (see
+	 * {@link FileUtils#linkOrCopy(Path, Path, long)}), so that no content is
+	 * written at all.
+	 * <p>
+	 * A file is replaced when it is going to be deleted or replaced by a
+	 * rename (like {@link AtomicWriter} does) right after, and so it is never
+	 * changed in place: otherwise the backup would change with it. Files with
+	 * other hard links are copied, as they may be changed in place through
+	 * them. Had the file not been replaced after all (e.g. its write failed),
+	 * the object shares its inode until it is.
+	 * <p>
+	 * A link saves writing the content, but not reading it: the file is still
+	 * hashed once, in order to name the object (see {@link #put(Path, boolean, String)}).
+	 */
+	public String put(Path file, boolean replaced) {
+		return put(file, replaced, null);
+	}
+	
+	/** 
+	 * Just like {@link #put(Path, boolean)}, but the file is not read at all
+	 * when its hash is already known (e.g. recorded by the {@link Manifest} of
+	 * the last execution) and its content is already stored
+	 * 
+	 * @param hash
+	 *            hash of the file content, or <code>null</code> if unknown
+	 */
+	public String put(Path file, boolean replaced, String hash) {
+		if(hash==null) {
+			hash = HashUtils.sha256(file);
+		}
+		if(!stored(hash)) {
+			try {
+				Path object = object(hash, compress);
+				Files.createDirectories(object.getParent());
+				Path tmp = Files.createTempFile(object.getParent(), ".", TMP);
+				if(compress) {
+					try (InputStream in = Files.newInputStream(file);
+							OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+						copy(in, out);
+					}
+				} else if(replaced && singleLink(file)) {
+					FileUtils.linkOrCopy(file, tmp, transferThreshold);
+				} else {
+					FileUtils.copyFile(file, tmp, transferThreshold);
+				}
+				Files.move(tmp, object, ATOMIC_MOVE, REPLACE_EXISTING);
+				// renaming a hard link over another link to the same file does nothing
+				Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return hash;
+	}
+	
+	/** The object holding the given content, or <code>null</code> if it is not stored */
+	public Path get(String hash) {
+		Path object = object(hash, true);
+		if(Files.exists(object)) {
+			return object;
+		}
+		object = object(hash, false);
+		return Files.exists(object) ? object : null;
+	}
+	
+	/** 
+	 * Opens the (uncompressed) content of the given hash. Uncompressed objects
+	 * are hashed first, as they may have been changed through a hard link
+	 */
+	public InputStream open(String hash) {
+		Path object = get(hash);
+		if(object==null) {
+			throw new RuntimeException("There is no backup of content " + hash + " in " + dir);
+		}
+		if(!object.toString().endsWith(GZ) && !hash.equals(HashUtils.sha256(object))) {
+			throw new RuntimeException("Backup " + object + " was changed after taken (e.g. through a hard link). It is not restored");
+		}
+		try {
+			InputStream in = Files.newInputStream(object);
+			return object.toString().endsWith(GZ) ? new GZIPInputStream(in) : in;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Size (in bytes) of every stored object, by hash */
+	public Map<String, Long> sizes() {
+		Map<String, Long> sizes = new HashMap<>();
+		if(Files.isDirectory(dir)) {
+			try (Stream<Path> objects = Files.walk(dir, 2)) {
+				objects.filter(Files::isRegularFile)
+						.filter(o -> !o.getFileName().toString().startsWith("."))
+						.forEach(o -> sizes.merge(hash(o), o.toFile().length(), Long::sum));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return sizes;
+	}
+	
+	/** Removes the given content from the store */
+	public void delete(String hash) {
+		try {
+			Files.deleteIfExists(object(hash, true));
+			Files.deleteIfExists(object(hash, false));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** 
+	 * Whether the content is stored. A linked object which content no more
+	 * matches its hash is removed, so that it is stored again
+	 */
+	private boolean stored(String hash) {
+		Path object = get(hash);
+		if(object==null) {
+			return false;
+		}
+		if(object.toString().endsWith(GZ) || singleLink(object) || hash.equals(HashUtils.sha256(object))) {
+			return true;
+		}
+		try {
+			Files.delete(object);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return false;
+	}
+
+	/** Whether the file has no other hard link, through which it could be changed in place */
+	private static boolean singleLink(Path file) {
+		try {
+			return ((Number) Files.getAttribute(file, "unix:nlink", NOFOLLOW_LINKS)).intValue() == 1;
+		} catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/** Objects are spread in sub directories named by the first 2 chars of the hash */
+	private Path object(String hash, boolean compressed) {
+		return dir.resolve(hash.substring(0, 2)).resolve(compressed ? hash + GZ : hash);
+	}
+
+	private static String hash(Path object) {
+		String name = object.getFileName().toString();
+		return name.endsWith(GZ) ? name.substring(0, name.length() - GZ.length()) : name;
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+	}
+}
@@ -0,0 +1,345 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+import com.datamaio.scd4j.util.io.HashUtils;
+
+/**
+ * What an execution has applied: for each target file, its size and last
+ * modified time right after being written, the size and last modified time
+ * of its source, the hash of its source and the hash of what was written
+ * (which differ only for templates). Hashes are kept only when they were
+ * computed. For templates, the hash of the properties they were merged with
+ * is also kept, as taken right before the merge, so that properties set by
+ * hooks are considered.
+ * <p>
+ * On the next execution a target is known to be unchanged, without reading
+ * its content, whenever its source (and properties, for templates) are the
+ * same and its size and last modified time were not touched since then. A
+ * source whose size and last modified time were not touched is the same,
+ * without being read either (see {@link Source}).
+ * <p>
+ * This class is thread safe.
+ * 
+ * @author Fernando Rubbo
+ */
+public class Manifest {
+	private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private static final String HEADER = "#scd4j-manifest-v3";
+	private static final String SEP = "\t";
+	private static final String NONE = "-";
+	
+	private final boolean recording;
+	private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+	
+	public Manifest() {
+		this(true);
+	}
+	
+	private Manifest(boolean recording) {
+		this.recording = recording;
+	}
+	
+	/** 
+	 * A manifest that records nothing, for modules walked in streaming mode,
+	 * whose memory must not grow with the number of files. Saving it removes
+	 * the existing one, which would be stale
+	 */
+	public static Manifest none() {
+		return new Manifest(false);
+	}
+	
+	/** Hash of the given properties, no matter their order */
+	public static String hash(Map<String, ? extends Object> props) {
+		return HashUtils.sha256(new TreeMap<>(props).toString());
+	}
+	
+	/** 
+	 * Loads the given manifest. Whenever it does not exist (or can not be
+	 * read) an empty one is returned, so that every target is considered changed
+	 */
+	public static Manifest load(Path file) {
+		if(Files.notExists(file)) {
+			return new Manifest();
+		}
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String header = in.readLine();
+			if(!HEADER.equals(header)) {
+				throw new IOException("Unknown manifest format: " + header);
+			}
+			Manifest manifest = new Manifest();
+			String line;
+			while((line = in.readLine()) != null) {
+				String[] cols = line.split(SEP, 8);
+				Entry e = new Entry(Long.parseLong(cols[0]), Long.parseLong(cols[1]), Long.parseLong(cols[2]), 
+						Long.parseLong(cols[3]), read(cols[4]), read(cols[5]), read(cols[6]));
+				manifest.entries.put(Paths.get(cols[7]), e);
+			}
+			return manifest;
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Manifest " + file + " could not be read. All files will be checked", e);
+			return new Manifest();
+		}
+	}
+	
+	/** Writes this manifest atomically, replacing the existing one */
+	public void save(Path file) {
+		if(!recording) {
+			FileUtils.delete(file);
+			return;
+		}
+		FileUtils.createDirectories(file.getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				out.write(HEADER);
+				out.newLine();
+				for (Map.Entry<Path, Entry> me : new TreeMap<>(entries).entrySet()) {
+					Entry e = me.getValue();
+					out.write(e.size + SEP + e.lastModified + SEP + e.sourceSize + SEP + e.sourceLastModified + SEP 
+							+ write(e.sourceHash) + SEP + write(e.propsHash) + SEP + write(e.outputHash) + SEP + me.getKey());
+					out.newLine();
+				}
+			}
+			Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing manifest " + file, e);
+		}
+	}
+	
+	private static String read(String hash) {
+		return NONE.equals(hash) ? null : hash;
+	}
+	
+	private static String write(String hash) {
+		return hash==null ? NONE : hash;
+	}
+	
+	public Entry get(Path target) {
+		return entries.get(target);
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Whether the target is exactly as left by the execution that recorded
+	 * this manifest, from the same source. Only the target and source
+	 * attributes are read. The source is only hashed when its size is the
+	 * same, but its last modified time is not.
+	 * 
+	 * @param propsHash
+	 *            hash of the properties the template would be merged with
+	 *            now. <code>null</code> for other files
+	 */
+	public boolean isUnchanged(Path target, Source source, String propsHash) {
+		Entry e = entries.get(target);
+		if(e==null || e.sourceSize != source.getSize()) {
+			return false;
+		}
+		if(propsHash!=null && !propsHash.equals(e.propsHash)) {
+			return false;
+		}
+		if(!matches(target, e)) {
+			return false;
+		}
+		return e.sourceLastModified == source.getLastModified()
+				|| (e.sourceHash != null && e.sourceHash.equals(source.getHash()));
+	}
+	
+	/** 
+	 * Hash of the target content, if it is still as left by the execution that
+	 * recorded this manifest and its hash was computed, or else <code>null</code>.
+	 * Only the target attributes are read
+	 */
+	public String hashOf(Path target) {
+		Entry e = entries.get(target);
+		return e!=null && e.outputHash!=null && matches(target, e) ? e.outputHash : null;
+	}
+	
+	/** Whether the target has the attributes recorded by the given entry */
+	private static boolean matches(Path target, Entry e) {
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(target, BasicFileAttributes.class);
+			return attrs.isRegularFile() 
+					&& attrs.size() == e.size 
+					&& attrs.lastModifiedTime().toMillis() == e.lastModified;
+		} catch (NoSuchFileException ex) {
+			return false;
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/** 
+	 * Records the target as it is now in the file system. The source hash is
+	 * only recorded if it was already computed
+	 * 
+	 * @param propsHash
+	 *            hash of the properties the template was merged with.
+	 *            <code>null</code> for other files
+	 * @param outputHash
+	 *            hash of what was written, for templates. <code>null</code>
+	 *            for other files, whose content is the one of the source
+	 */
+	public void record(Path target, Source source, String propsHash, String outputHash) {
+		if(!recording) {
+			return;
+		}
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(target, BasicFileAttributes.class);
+			entries.put(target, new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), source.getSize(), 
+					source.getLastModified(), source.hash, propsHash, outputHash==null ? source.hash : outputHash));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Keeps the entry of the given target, as recorded by another manifest */
+	public void keep(Path target, Manifest other) {
+		Entry e = other.get(target);
+		if(e!=null && recording) {
+			entries.put(target, e);
+		}
+	}
+	
+	/** 
+	 * A source file, whose size and last modified time are read once and whose
+	 * content is only hashed when first needed. It is not thread safe
+	 */
+	public static final class Source {
+		private final Path path;
+		private final long size;
+		private final long lastModified;
+		private String hash;
+		
+		private Source(Path path, long size, long lastModified) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+		
+		public static Source of(Path path) {
+			try {
+				return of(path, Files.readAttributes(path, BasicFileAttributes.class));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		/** The attributes are the ones already read when the module was walked */
+		public static Source of(Path path, BasicFileAttributes attrs) {
+			return new Source(path, attrs.size(), attrs.lastModifiedTime().toMillis());
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+		
+		/** See {@link HashUtils#sha256(Path)} */
+		public String getHash() {
+			if(hash==null) {
+				hash = HashUtils.sha256(path);
+			}
+			return hash;
+		}
+	}
+	
+	/** Applied state of a single target */
+	public static final class Entry {
+		private final long size;
+		private final long lastModified;
+		private final long sourceSize;
+		private final long sourceLastModified;
+		private final String sourceHash;
+		private final String propsHash;
+		private final String outputHash;
+		
+		private Entry(long size, long lastModified, long sourceSize, long sourceLastModified, 
+				String sourceHash, String propsHash, String outputHash) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sourceSize = sourceSize;
+			this.sourceLastModified = sourceLastModified;
+			this.sourceHash = sourceHash;
+			this.propsHash = propsHash;
+			this.outputHash = outputHash;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public long getSourceSize() {
+			return sourceSize;
+		}
+
+		public long getSourceLastModified() {
+			return sourceLastModified;
+		}
+
+		/** <code>null</code> if it was not computed */
+		public String getSourceHash() {
+			return sourceHash;
+		}
+
+		/** Hash of the properties the template was merged with. <code>null</code> for other files */
+		public String getPropsHash() {
+			return propsHash;
+		}
+
+		/** <code>null</code> if it was not computed */
+		public String getOutputHash() {
+			return outputHash;
+		}
+	}
+}
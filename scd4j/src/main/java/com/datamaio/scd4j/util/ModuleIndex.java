@@ -0,0 +1,358 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static com.datamaio.scd4j.conf.Configuration.DELETE_SUFFIX;
+import static com.datamaio.scd4j.conf.Configuration.HOOK_SUFFIX;
+import static com.datamaio.scd4j.conf.Configuration.TEMPLATE_SUFFIX;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In memory index of a module.
+ * <p>
+ * The module directory is walked only once. Every entry is classified (see
+ * {@link Kind}) and its target path is resolved once, when it is first
+ * needed (see {@link Entry#getTarget()}). Afterwards, both the
+ * delete and the copy phases are driven from memory by {@link #walk(FileVisitor)},
+ * which calls the visitor exactly as {@link Files#walkFileTree(Path, FileVisitor)} does.
+ * <p>
+ * Modules with too many files to be held in memory are indexed in streaming
+ * mode: only the <code>.hook</code> files are kept, and {@link #walk(FileVisitor)}
+ * walks the file system every time. Each directory is then read lazily
+ * through its {@link java.nio.file.DirectoryStream} and only the entry being
+ * visited (see {@link #get(Path)}) is kept, so memory is bounded by the depth
+ * of the tree, no matter how many files it has.
+ * 
+ * @author Fernando Rubbo
+ */
+public final class ModuleIndex {
+	
+	public enum Kind {
+		/** Regular directory */
+		DIRECTORY, 
+		/** File or directory to be deleted in the target (i.e. <code>*.del</code>) */
+		DELETE, 
+		/** Template to be merged (i.e. <code>*.tmpl</code>) */
+		TEMPLATE, 
+		/** Hook of another entry (i.e. <code>*.hook</code>) */
+		HOOK, 
+		/** Regular file to be copied */
+		PLAIN
+	}
+	
+	private final Path module;
+	private final PathHelper pathHelper;
+	private final boolean streaming;
+	private final List<Entry> entries = new ArrayList<>();
+	private final Map<Path, Entry> bySource = new HashMap<>();
+	private final Set<Path> hooks = new HashSet<>();
+	/** Entry being visited, in streaming mode */
+	private Entry current;
+	
+	public ModuleIndex(final Path module, final PathHelper pathHelper) {
+		this(module, pathHelper, false);
+	}
+	
+	public ModuleIndex(final Path module, final PathHelper pathHelper, final boolean streaming) {
+		this.module = module;
+		this.pathHelper = pathHelper;
+		this.streaming = streaming;
+		try {
+			Files.walkFileTree(module, new SimpleFileVisitor<Path>() {
+				private int depth = 0;
+				
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					add(dir, attrs, depth++);
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					add(file, attrs, depth);
+					return FileVisitResult.CONTINUE;
+				}
+				
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+					depth--;
+					return super.postVisitDirectory(dir, e);
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading module " + module, e);
+		}
+	}
+
+	private void add(Path source, BasicFileAttributes attrs, int depth) {
+		if(streaming) {
+			// hooks must be known (and compiled) before walking
+			if(source.getFileName().toString().endsWith(HOOK_SUFFIX) && !attrs.isDirectory()) {
+				hooks.add(source);
+			}
+			return;
+		}
+		Entry entry = new Entry(source, attrs, depth, pathHelper);
+		entries.add(entry);
+		bySource.put(entry.source, entry);
+		if(entry.kind==Kind.HOOK) {
+			hooks.add(entry.source);
+		}
+	}
+	
+	public Path getModule() {
+		return module;
+	}
+	
+	public boolean isStreaming() {
+		return streaming;
+	}
+	
+	/** All entries in the very same order they were walked. Not available in streaming mode */
+	public List<Entry> getEntries() {
+		if(streaming) {
+			throw new UnsupportedOperationException("Entries of " + module + " are not kept in streaming mode");
+		}
+		return Collections.unmodifiableList(entries);
+	}
+	
+	/** 
+	 * The entry of the given source. In streaming mode, it is meant to be
+	 * called while the source is visited. Otherwise its attributes are read again
+	 */
+	public Entry get(Path source) {
+		if(!streaming) {
+			return bySource.get(source);
+		}
+		Entry visited = current;
+		if(visited!=null && visited.source.equals(source)) {
+			return visited;
+		}
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			return new Entry(source, attrs, -1, pathHelper);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** All existing <code>.hook</code> files */
+	public Set<Path> getHooks() {
+		return Collections.unmodifiableSet(hooks);
+	}
+	
+	public boolean hasHook(Path source) {
+		return hooks.contains(Paths.get(source + HOOK_SUFFIX));
+	}
+	
+	/**
+	 * Replays the module tree into the given visitor, honoring
+	 * {@link FileVisitResult#SKIP_SUBTREE}, {@link FileVisitResult#SKIP_SIBLINGS}
+	 * and {@link FileVisitResult#TERMINATE}, without touching the file system
+	 */
+	public void walk(FileVisitor<Path> visitor) {
+		if(streaming) {
+			stream(visitor);
+			return;
+		}
+		try {
+			Deque<Entry> open = new ArrayDeque<>();
+			int skipDeeperThan = Integer.MAX_VALUE;
+			for (Entry e : entries) {
+				if(e.depth > skipDeeperThan) {
+					continue;
+				}
+				skipDeeperThan = Integer.MAX_VALUE;
+				while(!open.isEmpty() && open.peek().depth >= e.depth) {
+					if(visitor.postVisitDirectory(open.pop().source, null)==FileVisitResult.TERMINATE) {
+						return;
+					}
+				}
+				
+				FileVisitResult result;
+				if(e.isDirectory()) {
+					result = visitor.preVisitDirectory(e.source, e.attrs);
+					if(result==FileVisitResult.CONTINUE) {
+						open.push(e);
+					} else if(result==FileVisitResult.SKIP_SUBTREE) {
+						skipDeeperThan = e.depth;
+					}
+				} else {
+					result = visitor.visitFile(e.source, e.attrs);
+				}
+				
+				if(result==FileVisitResult.TERMINATE) {
+					return;
+				} 
+				if(result==FileVisitResult.SKIP_SIBLINGS) {
+					skipDeeperThan = e.depth - 1;
+				}
+			}
+			while(!open.isEmpty()) {
+				if(visitor.postVisitDirectory(open.pop().source, null)==FileVisitResult.TERMINATE) {
+					return;
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Walks the file system, keeping only the entry being visited */
+	private void stream(final FileVisitor<Path> visitor) {
+		try {
+			Files.walkFileTree(module, new FileVisitor<Path>() {
+				private int depth = 0;
+				
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					current = new Entry(dir, attrs, depth, pathHelper);
+					FileVisitResult result = visitor.preVisitDirectory(dir, attrs);
+					if(result==FileVisitResult.CONTINUE) {
+						depth++;
+					}
+					return result;
+				}
+				
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					current = new Entry(file, attrs, depth, pathHelper);
+					return visitor.visitFile(file, attrs);
+				}
+				
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+					return visitor.visitFileFailed(file, e);
+				}
+				
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+					depth--;
+					current = null;
+					return visitor.postVisitDirectory(dir, e);
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			current = null;
+		}
+	}
+	
+	/** An entry of the module (file or directory) */
+	public static final class Entry {
+		private final Path source;
+		private final BasicFileAttributes attrs;
+		private final int depth;
+		private final Kind kind;
+		private final PathHelper pathHelper;
+		private volatile Path target;
+		
+		private Entry(Path source, BasicFileAttributes attrs, int depth, PathHelper pathHelper) {
+			this.source = source;
+			this.attrs = attrs;
+			this.depth = depth;
+			this.kind = classify(source, attrs);
+			this.pathHelper = pathHelper;
+		}
+
+		private static Kind classify(Path source, BasicFileAttributes attrs) {
+			String name = source.getFileName().toString();
+			if(name.endsWith(HOOK_SUFFIX)) {
+				return Kind.HOOK;
+			} else if(name.endsWith(DELETE_SUFFIX)) {
+				return Kind.DELETE;
+			} else if(attrs.isDirectory()) {
+				return Kind.DIRECTORY;
+			} else if(name.endsWith(TEMPLATE_SUFFIX)) {
+				return Kind.TEMPLATE;
+			}
+			return Kind.PLAIN;
+		}
+		
+		private Path resolveTarget() {
+			switch (kind) {
+			case DELETE:
+				return pathHelper.getTargetWithoutSuffix(source, DELETE_SUFFIX);
+			case TEMPLATE:
+				return pathHelper.getTargetWithoutSuffix(source, TEMPLATE_SUFFIX);
+			default:
+				return pathHelper.getTarget(source);
+			}
+		}
+		
+		public Path getSource() {
+			return source;
+		}
+		
+		public BasicFileAttributes getAttrs() {
+			return attrs;
+		}
+		
+		public Kind getKind() {
+			return kind;
+		}
+		
+		public boolean isDirectory() {
+			return attrs.isDirectory();
+		}
+		
+		/**
+		 * Resolved target path of this entry, without <code>.del</code> or
+		 * <code>.tmpl</code> suffix. It is resolved only when first asked,
+		 * i.e. while the entry is visited, as <code>Module.hook</code> and 
+		 * previous hooks may set the properties it uses
+		 */
+		public Path getTarget() {
+			Path resolved = target;
+			if(resolved==null) {
+				target = resolved = resolveTarget();
+			}
+			return resolved;
+		}
+		
+		@Override
+		public String toString() {
+			return kind + " " + source + " -> " + (target==null ? "?" : target);
+		}
+	}
+}
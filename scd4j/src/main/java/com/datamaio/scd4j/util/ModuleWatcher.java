@@ -0,0 +1,161 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches module directories (and all their subdirectories) for changes.
+ * <p>
+ * {@link #take()} blocks until something changes and then keeps collecting
+ * changes until none happens during the debounce time, so that an editor
+ * saving a file (or a <code>git checkout</code> touching many of them)
+ * results in a single batch. Directories created meanwhile are watched as
+ * well, and all files within them are considered changed.
+ * 
+ * @author Fernando Rubbo
+ */
+public class ModuleWatcher implements Closeable {
+	
+	private final Collection<Path> modules;
+	private final long debounce;
+	private final WatchService service;
+	private final Map<WatchKey, Path> dirs = new HashMap<>();
+
+	/** The debounce time is given in milliseconds */
+	public ModuleWatcher(Collection<Path> modules, long debounce) {
+		this.modules = modules;
+		this.debounce = debounce;
+		try {
+			this.service = FileSystems.getDefault().newWatchService();
+			for (Path module : modules) {
+				register(module, null);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** 
+	 * Waits for the next batch of changes. Returns the files created, modified
+	 * or deleted, which may be empty when only ignored files (e.g. editor
+	 * backups) have changed
+	 */
+	public Set<Path> take() throws InterruptedException {
+		final Set<Path> changed = new TreeSet<>();
+		WatchKey key = service.take();
+		while(key!=null) {
+			collect(key, changed);
+			key = service.poll(debounce, TimeUnit.MILLISECONDS);
+		}
+		return changed;
+	}
+
+	private void collect(WatchKey key, Set<Path> changed) {
+		final Path dir = dirs.get(key);
+		try {
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if(event.kind()==OVERFLOW) {
+					// events were lost, so everything may have changed
+					for (Path module : modules) {
+						register(module, changed);
+					}
+					continue;
+				}
+				
+				final Path path = dir.resolve((Path) event.context());
+				if(Files.isDirectory(path, NOFOLLOW_LINKS)) {
+					if(event.kind()==ENTRY_CREATE) {
+						register(path, changed);
+					}
+				} else if(!ignored(path)) {
+					changed.add(path);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if(!key.reset()) {
+				dirs.remove(key);
+			}
+		}
+	}
+	
+	/** Watches the given directory and its subdirectories, collecting their files when required */
+	private void register(Path root, final Set<Path> changed) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dirs.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if(changed!=null && !ignored(file)) {
+					changed.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	/** Temporary files created by editors while saving (e.g. vim and emacs) */
+	private static boolean ignored(Path file) {
+		String name = file.getFileName().toString();
+		return name.endsWith("~") || name.startsWith(".#") 
+				|| name.endsWith(".swp") || name.endsWith(".swx");
+	}
+	
+	@Override
+	public void close() {
+		try {
+			service.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
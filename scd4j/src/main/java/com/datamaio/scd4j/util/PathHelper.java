@@ -23,22 +23,34 @@
  */
 package com.datamaio.scd4j.util;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.datamaio.scd4j.cmd.Command;
 import com.datamaio.scd4j.conf.Configuration;
 
 /**
+ * Resolves the target of module files, replacing <code>@var@</code> by
+ * the value of the property <code>var</code>.
+ * <p>
+ * Each path segment (i.e. file or directory name) with variables is split
+ * into text and variable names only once, as the same directories are
+ * resolved again for every file within them. Values are always read from the
+ * properties, as hooks may change them.
  * 
  * @author Fernando Rubbo
  */
 public final class PathHelper {
+	private static final char VAR = '@';
+	
 	private Map<String, Object> properties;
 	private Path module;
+	private final Map<String, String[]> segments = new ConcurrentHashMap<>();
 
 	public PathHelper(Configuration conf){
 		this(conf.getProps(), conf.getModule());
@@ -72,16 +84,62 @@ public final class PathHelper {
 	}
 	
 	public String replaceVars(String srcPath) {
-		final Pattern p = Pattern.compile("@([^@])*@");
-    	final Matcher m = p.matcher(srcPath);
-    	while(m.find()) {
-    		final String key = m.group();
-			final Object value = properties.get(key.replaceAll("@", ""));
-			if(value!=null)
-				srcPath = srcPath.replace(key, value.toString());
-			else 
-				throw new IllegalStateException("Variable " + key.replaceAll("@", "") + " was not declared.");
-    	}
-		return srcPath;
+		if(srcPath.indexOf(VAR) < 0) {
+			return srcPath;
+		}
+		
+		final int length = srcPath.length();
+		final StringBuilder result = new StringBuilder(length + 32);
+		int start = 0;
+		while(start <= length) {
+			int end = start;
+			boolean vars = false;
+			while(end < length && !isSeparator(srcPath.charAt(end))) {
+				vars |= srcPath.charAt(end) == VAR;
+				end++;
+			}
+			
+			if(vars) {
+				String[] parts = segments.computeIfAbsent(srcPath.substring(start, end), PathHelper::tokenize);
+				resolve(parts, result);
+			} else {
+				result.append(srcPath, start, end);
+			}
+			if(end < length) {
+				result.append(srcPath.charAt(end));
+			}
+			start = end + 1;
+		}
+		return result.toString();
+	}
+	
+	/** Splits the segment into text and variable names, e.g. <code>[a-, var, .txt]</code> for <code>a-@var@.txt</code> */
+	static String[] tokenize(String segment) {
+		final List<String> parts = new ArrayList<>();
+		int from = 0;
+		int begin;
+		int end;
+		while((begin = segment.indexOf(VAR, from)) >= 0 && (end = segment.indexOf(VAR, begin + 1)) >= 0) {
+			parts.add(segment.substring(from, begin));
+			parts.add(segment.substring(begin + 1, end));
+			from = end + 1;
+		}
+		parts.add(segment.substring(from));
+		return parts.toArray(new String[parts.size()]);
+	}
+	
+	private void resolve(String[] parts, StringBuilder result) {
+		result.append(parts[0]);
+		for (int i = 1; i < parts.length; i += 2) {
+			final Object value = properties.get(parts[i]);
+			if(value==null) {
+				throw new IllegalStateException("Variable " + parts[i] + " was not declared.");
+			}
+			result.append(value).append(parts[i + 1]);
+		}
+	}
+	
+	private static boolean isSeparator(char c) {
+		return c == '/' || c == File.separatorChar;
 	}
 }
@@ -0,0 +1,140 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of worker threads. Whenever the queue is full the submitting
+ * thread executes the task itself, so that memory stays bounded no matter how
+ * many tasks are submitted.
+ * <p>
+ * {@link #await()} works as a barrier: it returns only when all tasks
+ * submitted so far have finished. A parallelism of 1 (or less) executes every
+ * task in the submitting thread.
+ * 
+ * @author Fernando Rubbo
+ */
+public class WorkerPool implements Closeable {
+	private static final int QUEUE_SIZE_PER_THREAD = 64;
+	
+	/** A task that may throw checked exceptions */
+	public interface Task {
+		void run() throws Exception;
+	}
+	
+	private final ThreadPoolExecutor executor;
+	/** Only the number of unfinished tasks and the first failure are kept, not the tasks */
+	private final Object lock = new Object();
+	private int outstanding;
+	private RuntimeException failure;
+	
+	public WorkerPool(String name, int parallelism) {
+		if(parallelism > 1) {
+			AtomicInteger count = new AtomicInteger();
+			this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS, 
+					new ArrayBlockingQueue<>(parallelism * QUEUE_SIZE_PER_THREAD), 
+					r -> {
+						Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					},
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		} else {
+			this.executor = null;
+		}
+	}
+	
+	public void submit(Task task) {
+		if(executor==null) {
+			run(task);
+		} else {
+			synchronized (lock) {
+				outstanding++;
+			}
+			executor.execute(() -> {
+				try {
+					run(task);
+				} catch (Throwable t) {
+					synchronized (lock) {
+						if(failure==null) {
+							failure = t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+						}
+					}
+				} finally {
+					synchronized (lock) {
+						if(--outstanding==0) {
+							lock.notifyAll();
+						}
+					}
+				}
+			});
+		}
+	}
+	
+	/** 
+	 * Waits for all tasks submitted so far. Whenever some of them have failed,
+	 * the first failure is thrown (after all the others have finished).
+	 */
+	public void await() {
+		RuntimeException first;
+		synchronized (lock) {
+			while(outstanding > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for workers", e);
+				}
+			}
+			first = failure;
+			failure = null;
+		}
+		if(first!=null) {
+			throw first;
+		}
+	}
+	
+	private static void run(Task task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Stops the workers. Tasks not yet started are discarded */
+	@Override
+	public void close() {
+		if(executor!=null) {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes files into a temporary file in the target directory and then renames
+ * it over the target, so that readers of the target (e.g. a running server)
+ * see either the old or the new content, but never a half written file.
+ * <p>
+ * Durability is traded against throughput by the {@link Fsync} policy. This
+ * class is thread safe.
+ * 
+ * @author Fernando Rubbo
+ */
+public class AtomicWriter {
+	private static final Logger LOGGER = Logger.getLogger(AtomicWriter.class);
+	private static final String TMP_SUFFIX = ".scd4j-tmp";
+	public static final int SYNC_BATCH = 4096;
+	
+	public enum Fsync {
+		/** Every file, and then its directory, is synced right after written */
+		FILE,
+		/** 
+		 * Files and (once each) their directories are synced all at once by
+		 * {@link AtomicWriter#sync()}, or every {@link AtomicWriter#SYNC_BATCH}
+		 * files, so that the files waiting to be synced do not grow with the module
+		 */
+		MODULE,
+		/** Nothing is synced. The operating system decides when to write to disk */
+		NONE
+	}
+	
+	private final Fsync fsync;
+	private final long transferThreshold;
+	private final Queue<Path> written = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pending = new AtomicInteger();
+	
+	public AtomicWriter(Fsync fsync, long transferThreshold) {
+		this.fsync = fsync;
+		this.transferThreshold = transferThreshold;
+	}
+	
+	/** Replaces the target by a copy of the source, which permissions it gets (see {@link FileUtils#copyFile(Path, Path, long)}) */
+	public void copy(Path source, Path target) {
+		Path tmp = tmp(target);
+		try {
+			FileUtils.copyFile(source, tmp, transferThreshold);
+			commit(tmp, target);
+		} finally {
+			deleteQuietly(tmp);
+		}
+	}
+	
+	/** 
+	 * Replaces the target content. An existing target keeps its permissions
+	 * and owner and, when it is a symbolic link, the file it links to is replaced
+	 */
+	public void write(byte[] content, Path target) {
+		if(Files.isSymbolicLink(target)) {
+			try {
+				target = target.toRealPath();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		Path tmp = tmp(target);
+		try {
+			Files.write(tmp, content);
+			copyPosixAttributes(target, tmp);
+			commit(tmp, target);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			deleteQuietly(tmp);
+		}
+	}
+	
+	/** 
+	 * Replaces the target by the given content, streaming it. The target gets
+	 * the given permissions or, when <code>null</code>, keeps its own (just
+	 * like {@link #write(byte[], Path)})
+	 */
+	public void write(InputStream content, Path target, Set<PosixFilePermission> permissions) {
+		if(Files.isSymbolicLink(target)) {
+			try {
+				target = target.toRealPath();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		Path tmp = tmp(target);
+		try {
+			Files.copy(content, tmp, REPLACE_EXISTING);
+			copyPosixAttributes(target, tmp);
+			if(permissions!=null && Files.getFileStore(tmp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				Files.setPosixFilePermissions(tmp, permissions);
+			}
+			commit(tmp, target);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			deleteQuietly(tmp);
+		}
+	}
+	
+	/** Syncs everything written so far, whenever the policy is {@link Fsync#MODULE} */
+	public void sync() {
+		if(fsync!=Fsync.MODULE) {
+			return;
+		}
+		Set<Path> dirs = ConcurrentHashMap.newKeySet();
+		Path file;
+		while((file = written.poll()) != null) {
+			pending.decrementAndGet();
+			// hooks may have already moved or removed it
+			if(Files.exists(file)) {
+				force(file);
+			}
+			dirs.add(file.toAbsolutePath().getParent());
+		}
+		for (Path dir : dirs) {
+			forceDir(dir);
+		}
+	}
+	
+	private void commit(Path tmp, Path target) {
+		try {
+			if(fsync==Fsync.FILE) {
+				force(tmp);
+			}
+			Files.move(tmp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+			if(fsync==Fsync.FILE) {
+				forceDir(target.toAbsolutePath().getParent());
+			} else if(fsync==Fsync.MODULE) {
+				written.add(target);
+				if(pending.incrementAndGet() >= SYNC_BATCH) {
+					sync();
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static Path tmp(Path target) {
+		return target.resolveSibling("." + target.getFileName() + TMP_SUFFIX);
+	}
+	
+	private static void copyPosixAttributes(Path from, Path to) throws IOException {
+		if(!Files.exists(from) || !Files.getFileStore(to).supportsFileAttributeView(PosixFileAttributeView.class)) {
+			return;
+		}
+		PosixFileAttributes attrs = Files.readAttributes(from, PosixFileAttributes.class);
+		Files.setPosixFilePermissions(to, attrs.permissions());
+		try {
+			PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+			view.setOwner(attrs.owner());
+			view.setGroup(attrs.group());
+		} catch (IOException e) {
+			// only privileged users can change owners
+			LOGGER.debug("Owner of " + from + " could not be kept: " + e.getMessage());
+		}
+	}
+	
+	/** 
+	 * Opened just for reading, as the file may already be read only (e.g. 0444).
+	 * A file that could not be synced is still written, so it is just logged
+	 */
+	private static void force(Path file) {
+		try (FileChannel channel = FileChannel.open(file, READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			LOGGER.warn("File " + file + " could not be synced: " + e.getMessage());
+		}
+	}
+	
+	/** Not every platform can sync directories (e.g. Windows). In such case it is just ignored */
+	private static void forceDir(Path dir) {
+		try (FileChannel channel = FileChannel.open(dir, READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			LOGGER.debug("Directory " + dir + " could not be synced: " + e.getMessage());
+		}
+	}
+	
+	private static void deleteQuietly(Path tmp) {
+		try {
+			Files.deleteIfExists(tmp);
+		} catch (IOException e) {
+			LOGGER.warn("Temporary file " + tmp + " could not be deleted", e);
+		}
+	}
+}
@@ -23,8 +23,6 @@
  */
 package com.datamaio.scd4j.util.io;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
@@ -33,11 +31,19 @@ import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 /**
+ * Copies a directory tree.
+ * <p>
+ * Target directories already verified or created (see {@link #getTargetDirs()})
+ * are neither checked nor created again. The set may be shared by all
+ * visitors of the same run, e.g. when different sources resolve to the same
+ * target directory.
  * 
  * @author Fernando Rubbo
  */
@@ -48,19 +54,26 @@ public class CopyVisitor extends SimpleFileVisitor<Path> {
 	protected Path fromPath;
 	protected Path toPath;
 	protected final PathMatcher matcher;
+	private final Set<Path> targetDirs;
 	
 	public CopyVisitor(Path from, Path to){
 		this(from, to, "*");
 	}
 	
     public CopyVisitor(Path from, Path to, String glob){
+    	this(from, to, glob, new HashSet<>());
+    }
+    
+    public CopyVisitor(Path from, Path to, String glob, Set<Path> targetDirs){
 		Objects.requireNonNull(from);
 		Objects.requireNonNull(to);
     	Objects.requireNonNull(glob);
+    	Objects.requireNonNull(targetDirs);
 		
 		this.fromPath = from;
 		this.toPath = to;
     	this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    	this.targetDirs = targetDirs;
     	LOGGER.trace("VISITOR INITIALIZED (Matcher: " + glob + ")");
     }
     
@@ -72,26 +85,36 @@ public class CopyVisitor extends SimpleFileVisitor<Path> {
 		this.fromPath = from;
 		this.toPath = to;
     	this.matcher = matcher;
+    	this.targetDirs = new HashSet<>();
     	LOGGER.trace("VISITOR INITIALIZED (Matcher: " + matcher + ")");
     }
 	
 	@Override
 	public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-		Path resolvedTargetDir = toPath;
-		if(!fromPath.equals(dir)){
-			final Path relativize = fromPath.relativize(dir);
-			resolvedTargetDir = toPath.resolve(relativize);			
+		if(!mustVisit(dir)) {
+			LOGGER.trace(tabs() + "Skipping DIR " + dir + " and its whole subtree");
+			return FileVisitResult.SKIP_SUBTREE;
+		}
+		
+		Path resolvedTargetDir = resolveTarget(dir);
+		if(targetDirs.contains(resolvedTargetDir)) {
+			LOGGER.trace(tabs() + "PRE VISIT DIR : " + dir + " (target directory already verified)");
+			level++;
+			return FileVisitResult.CONTINUE;
 		}
-		resolvedTargetDir = resolveVars(resolvedTargetDir);
 		
-		boolean goingToCreate = Files.notExists(resolvedTargetDir) && mustCopy(dir);
+		boolean notExists = Files.notExists(resolvedTargetDir);
+		boolean goingToCreate = notExists && mustCopy(dir);
 		if(LOGGER.isTraceEnabled()) {
 			LOGGER.trace(tabs() + "PRE VISIT DIR : " + dir + " (going to create target directory? " + goingToCreate + ")");
     	}
 		
 		if (goingToCreate) {
-			Files.createDirectories(resolvedTargetDir);
+			createDirectories(resolvedTargetDir);
 		} 
+		if (goingToCreate || !notExists) {
+			targetDirs.add(resolvedTargetDir);
+		}
 		
 		level++;
 		return FileVisitResult.CONTINUE;
@@ -99,9 +122,7 @@ public class CopyVisitor extends SimpleFileVisitor<Path> {
 
 	@Override
 	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-		final Path relativize = fromPath.relativize(file);
-		Path resolvedTargetFile = toPath.resolve(relativize);
-		resolvedTargetFile = resolveVars(resolvedTargetFile);
+		Path resolvedTargetFile = resolveTarget(file);
 		
 		if(mustCopy(file)) {
 			LOGGER.trace(tabs() + "Coping FILE "+ file + " to " + resolvedTargetFile);
@@ -113,12 +134,32 @@ public class CopyVisitor extends SimpleFileVisitor<Path> {
 		return FileVisitResult.CONTINUE;
 	}
 	
+	/** Creates the target directory, as well as its missing parents */
+	protected void createDirectories(Path dir) throws IOException {
+		Files.createDirectories(dir);
+	}
+	
+	/** Target directories already verified or created */
+	public Set<Path> getTargetDirs() {
+		return targetDirs;
+	}
+	
+	/** Whether the given directory must be visited at all. Otherwise its whole subtree is skipped */
+	protected boolean mustVisit(Path dir) {
+		return true;
+	}
+	
 	protected boolean mustCopy(Path file) {
 		return matcher.matches(file.getFileName());
 	}
 
+	/** Files whose target already has the same content are not copied again */
 	protected void copy(Path file, final Path resolvedTargetFile) throws IOException {
-		Files.copy(file, resolvedTargetFile, REPLACE_EXISTING);
+		if(FileUtils.sameContent(file, resolvedTargetFile)) {
+			LOGGER.trace(tabs() + "Unchanged FILE " + resolvedTargetFile);
+			return;
+		}
+		FileUtils.copyFile(file, resolvedTargetFile);
 	}
 	
 	@Override
@@ -143,4 +184,14 @@ public class CopyVisitor extends SimpleFileVisitor<Path> {
 		return path;
 	}
 	
+	/** Resolves the target of the given source file or directory */
+	protected Path resolveTarget(Path source) {
+		Path resolved = toPath;
+		if(!fromPath.equals(source)){
+			final Path relativize = fromPath.relativize(source);
+			resolved = toPath.resolve(relativize);			
+		}
+		return resolveVars(resolved);
+	}
+	
 }
@@ -25,15 +25,26 @@ package com.datamaio.scd4j.util.io;
 
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 
@@ -44,6 +55,10 @@ import org.apache.log4j.Logger;
 public final class FileUtils {
 	
 	private static final Logger LOGGER = Logger.getLogger(FileUtils.class);
+	private static final long MB = 1024 * 1024;
+	
+	/** Default size from which files are copied by {@link FileChannel#transferTo} */
+	public static final long TRANSFER_THRESHOLD = 8 * MB;
 	
 	private FileUtils(){}
 	
@@ -112,11 +127,11 @@ public final class FileUtils {
 			} else if (Files.isRegularFile(source)) {
 				if(Files.isDirectory(target)) {
 					Path targetFile = PathUtils.get(target, source.getFileName());
-					Files.copy(source, targetFile, REPLACE_EXISTING);
+					copyFile(source, targetFile);
 				} else {
 					// Se o diretório onde estamos querendo colocar o arquivo Não existir, lança uma NoSuchFileException
 					// Motivo: eu Não tenho como inferir se o target é um dir ou um file
-					Files.copy(source, target, REPLACE_EXISTING);
+					copyFile(source, target);
 				}
 			} else {
 				throw new RuntimeException("Não implementado!");
@@ -134,9 +149,115 @@ public final class FileUtils {
 		}
 	}
 	
+	/** Copies the file, transferring it by the kernel whenever it is at least {@link #TRANSFER_THRESHOLD} big */
 	public static void copyFile(Path source, Path target) {
+		copyFile(source, target, TRANSFER_THRESHOLD);
+	}
+	
+	/**
+	 * Copies the file, replacing the target. Files at least
+	 * <code>transferThreshold</code> big are copied with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, 
+	 * which the kernel may serve without copying the content into user space 
+	 * (e.g. <code>sendfile</code> or <code>copy_file_range</code>).
+	 * The achieved throughput of such copies is logged.
+	 */
+	public static void copyFile(Path source, Path target, long transferThreshold) {
 		try {
-			Files.copy(source, target, REPLACE_EXISTING);
+			long size = Files.size(source);
+			if(size >= transferThreshold) {
+				transfer(source, target, size);
+			} else {
+				Files.copy(source, target, REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Hard links the target to the source, replacing the target. This is only
+	 * safe when the source is never changed in place afterwards (i.e. it is
+	 * deleted or replaced by a rename), as both share the very same inode.
+	 * Symbolic links, or files that cannot be linked (e.g. target in other file
+	 * system), are copied by {@link #copyFile(Path, Path, long)}, which lets
+	 * file systems like XFS or Btrfs clone the extents instead of the content.
+	 * 
+	 * @return whether the target was linked
+	 */
+	public static boolean linkOrCopy(Path source, Path target, long transferThreshold) {
+		if(!Files.isSymbolicLink(source)) {
+			try {
+				Files.deleteIfExists(target);
+				Files.createLink(target, source);
+				return true;
+			} catch (IOException | UnsupportedOperationException e) {
+				LOGGER.debug("Could not link " + target + " to " + source + " (" + e + "). Copying it");
+			}
+		}
+		copyFile(source, target, transferThreshold);
+		return false;
+	}
+
+	/** Just like {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}, the target is replaced and gets the source permissions */
+	private static void transfer(Path source, Path target, long size) throws IOException {
+		long start = System.nanoTime();
+		Files.deleteIfExists(target);
+		try (FileChannel in = FileChannel.open(source, READ);
+				FileChannel out = FileChannel.open(target, WRITE, CREATE_NEW)) {
+			long position = 0;
+			while (position < size) {
+				long transferred = in.transferTo(position, size - position, out);
+				if(transferred <= 0) {
+					break;
+				}
+				position += transferred;
+			}
+		}
+		if(Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+			Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+		}
+		
+		long nanos = Math.max(System.nanoTime() - start, 1);
+		LOGGER.info(String.format(Locale.ROOT, "Transferred %s (%d MB) in %d ms (%.1f MB/s)", target,
+				size / MB, TimeUnit.NANOSECONDS.toMillis(nanos), (size / (double) MB) / (nanos / 1e9)));
+	}
+
+	/** 
+	 * Whether the target is a regular file with exactly the same content of
+	 * the source. Sizes are compared first, so that contents are only read
+	 * (and hashed) when they may be equal
+	 */
+	public static boolean sameContent(Path source, Path target) {
+		try {
+			return Files.isRegularFile(target) 
+					&& Files.size(source) == Files.size(target)
+					&& HashUtils.sha256(source).equals(HashUtils.sha256(target));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Whether the target is a regular file with exactly the given content */
+	public static boolean sameContent(byte[] content, Path target) {
+		return sameContent(content.length, HashUtils.sha256(content), target);
+	}
+	
+	/** Whether the target is a regular file with the given size and hash (see {@link HashUtils#sha256(Path)}) */
+	public static boolean sameContent(long size, String hash, Path target) {
+		return sameContent(size, () -> hash, target);
+	}
+	
+	/** 
+	 * Whether the target is a regular file with the given size and hash (see
+	 * {@link HashUtils#sha256(Path)}). The hash is only asked for when the
+	 * sizes are the same
+	 */
+	public static boolean sameContent(long size, Supplier<String> hash, Path target) {
+		try {
+			return Files.isRegularFile(target) 
+					&& size == Files.size(target)
+					&& hash.get().equals(HashUtils.sha256(target));
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -183,6 +304,16 @@ public final class FileUtils {
 		}
 	}
 	
+	/** Finds, recursively, all files and directories whose names match the given glob */
+	public static Set<Path> find(Path dir, String glob) {
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		try (Stream<Path> paths = Files.walk(dir)) {
+			return paths.filter(p -> matcher.matches(p.getFileName())).collect(toSet());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	public static void move(Path from, Path to) {
 		try {
 			if(Files.isDirectory(from)) {
@@ -0,0 +1,173 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In process <code>chmod</code> and <code>chown</code>, through the posix
+ * attribute views, so that no process is forked per file.
+ * <p>
+ * Just like the commands, recursive changes do not follow the symbolic
+ * links found in the tree.
+ * 
+ * @author Fernando Rubbo
+ */
+public final class PosixUtils {
+	private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+	private static final Pattern OCTAL = Pattern.compile("0?[0-7]{1,3}");
+	private static final Pattern CLAUSE = Pattern.compile("([ugoa]+)((?:[-+=][rwxX]*)+)");
+	private static final String RWX = "rwx";
+	private static final Pattern ACTION = Pattern.compile("([-+=])([rwxX]*)");
+	
+	private PosixUtils(){}
+	
+	/**
+	 * Changes the permissions, given in octal (e.g. <code>755</code>) or
+	 * symbolic (e.g. <code>u+x,go-w</code>) notation.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             for modes not supported by {@link PosixFilePermission}:
+	 *             special bits (setuid, setgid and sticky) and symbolic modes
+	 *             without users, which depend on the umask (e.g. <code>+x</code>)
+	 */
+	public static void chmod(String mode, Path path, boolean recursive) throws IOException {
+		// the mode is checked before touching anything
+		permissions(mode, EnumSet.noneOf(PosixFilePermission.class), false);
+		walk(path, recursive, (p, links) -> {
+			PosixFileAttributeView view = Files.getFileAttributeView(p, PosixFileAttributeView.class);
+			Set<PosixFilePermission> current = view.readAttributes().permissions();
+			Set<PosixFilePermission> changed = permissions(mode, current, Files.isDirectory(p));
+			if(!changed.equals(current)) {
+				view.setPermissions(changed);
+			}
+		}, false);
+	}
+	
+	/** Changes the owner and, when not <code>null</code>, the group */
+	public static void chown(String user, String group, Path path, boolean recursive) throws IOException {
+		UserPrincipalLookupService lookup = path.getFileSystem().getUserPrincipalLookupService();
+		UserPrincipal owner = lookup.lookupPrincipalByName(user);
+		GroupPrincipal grp = group!=null ? lookup.lookupPrincipalByGroupName(group) : null;
+		walk(path, recursive, (p, links) -> {
+			PosixFileAttributeView view = Files.getFileAttributeView(p, PosixFileAttributeView.class, links);
+			view.setOwner(owner);
+			if(grp!=null) {
+				view.setGroup(grp);
+			}
+		}, true);
+	}
+
+	/** The given permissions changed by the mode */
+	static Set<PosixFilePermission> permissions(String mode, Set<PosixFilePermission> current, boolean dir) {
+		if(OCTAL.matcher(mode).matches()) {
+			int bits = Integer.parseInt(mode, 8);
+			Set<PosixFilePermission> result = EnumSet.noneOf(PosixFilePermission.class);
+			for (int i = 0; i < PERMISSIONS.length; i++) {
+				if((bits & (1 << (PERMISSIONS.length - 1 - i))) != 0) {
+					result.add(PERMISSIONS[i]);
+				}
+			}
+			return result;
+		}
+		
+		Set<PosixFilePermission> result = current.isEmpty() ? EnumSet.noneOf(PosixFilePermission.class) : EnumSet.copyOf(current);
+		for (String clause : mode.split(",")) {
+			Matcher m = CLAUSE.matcher(clause);
+			if(!m.matches()) {
+				throw new IllegalArgumentException("Mode not supported: " + mode);
+			}
+			String who = m.group(1).replace("a", "ugo");
+			Matcher action = ACTION.matcher(m.group(2));
+			while (action.find()) {
+				String op = action.group(1);
+				// X is execute only for directories or files already executable by someone
+				boolean executable = dir || current.stream().anyMatch(p -> p.name().endsWith("EXECUTE"));
+				String perms = action.group(2).replace("X", executable ? "x" : "");
+				for (char w : who.toCharArray()) {
+					for (int i = 0; i < RWX.length(); i++) {
+						PosixFilePermission permission = PERMISSIONS["ugo".indexOf(w) * 3 + i];
+						if(perms.indexOf(RWX.charAt(i)) >= 0) {
+							if(op.equals("-")) {
+								result.remove(permission);
+							} else {
+								result.add(permission);
+							}
+						} else if(op.equals("=")) {
+							result.remove(permission);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
+	private interface Change {
+		void apply(Path path, LinkOption[] links) throws IOException;
+	}
+	
+	/** Applies the change to the path and, when recursive, to everything below it except symbolic links (unless they are to be changed themselves) */
+	private static void walk(Path path, boolean recursive, Change change, boolean links) throws IOException {
+		change.apply(path, new LinkOption[0]);
+		if(!recursive || !Files.isDirectory(path)) {
+			return;
+		}
+		final LinkOption[] nofollow = new LinkOption[] {NOFOLLOW_LINKS};
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if(!dir.equals(path)) {
+					change.apply(dir, nofollow);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if(!attrs.isSymbolicLink() || links) {
+					change.apply(file, nofollow);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
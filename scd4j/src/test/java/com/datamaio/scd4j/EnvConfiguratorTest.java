@@ -69,6 +69,7 @@ public class EnvConfiguratorTest {
 		Path base = new File(".").getAbsoluteFile().toPath();
 		FileUtils.delete(PathUtils.get(base, "backup"));
 		FileUtils.delete(PathUtils.get(base, "log"));
+		FileUtils.delete(PathUtils.get(base, "state"));
 	}
 	
 	@Test
@@ -249,6 +250,29 @@ public class EnvConfiguratorTest {
 		}
 	}
 	
+	@Test
+	public void testCopyWithDirectoryHook() throws Exception {
+		Path[] paths = createEnv(12);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		
+		try {
+			assertThat(exists(PathUtils.get(fs, "kept")), is(false));
+			assertThat(exists(PathUtils.get(fs, "skipped")), is(false));
+			
+			new EnvConfiguratorMock(build(module)).copyFiles();
+			
+			assertThat(exists(PathUtils.get(fs, "kept/c.txt")), is(true));
+			assertThat(exists(PathUtils.get(fs, "kept.postexecuted")), is(true));
+			assertThat(exists(PathUtils.get(fs, "kept.hook")), is(false));
+			assertThat(exists(PathUtils.get(fs, "skipped")), is(false));
+			assertThat(exists(PathUtils.get(fs, "skipped.hook")), is(false));
+		} finally {		
+			FileUtils.delete(root);
+		}
+	}
+	
 	@Test
 	public void testExecWithModulePreCondition() throws Exception {
 		Path[] paths = createEnv(7);
@@ -357,6 +381,28 @@ public class EnvConfiguratorTest {
 		}
 	}
 	
+	@Test
+	public void testTmplMergedWithPropertiesSetByHooks() throws Exception {
+		Path[] paths = createEnv(13);
+		Path root = paths[0];
+		Path fs = paths[1];
+		Path module = paths[2];
+		
+		try {
+			// the very same properties in both executions, but the hook sets another value
+			System.setProperty("scd4j.test", "first");
+			new EnvConfiguratorMock(build(module)).execute();
+			assertThat(new String(Files.readAllBytes(PathUtils.get(fs, "f13.txt"))), is("first"));
+			
+			System.setProperty("scd4j.test", "second");
+			new EnvConfiguratorMock(build(module)).execute();
+			assertThat(new String(Files.readAllBytes(PathUtils.get(fs, "f13.txt"))), is("second"));
+		} finally {
+			System.clearProperty("scd4j.test");
+			FileUtils.delete(root);
+		}
+	}
+	
 	// ------------ private methods ---------
 	
 	private byte[] buildModuleHookPre() {
@@ -449,8 +495,9 @@ public class EnvConfiguratorTest {
 		@Override
 		BackupHelper buildBackupHelper(Configuration conf) {
 			return new BackupHelper(conf){
-				public void backupFile(Path file) {};
-				public void backupFileOrDir(Path fileOrDir) {};
+				public void backupFile(Path file, boolean replaced, String hash) {};
+				public void backupFileOrDir(Path fileOrDir, boolean replaced) {};
+				public void backupAddedDir(Path dir) {};
 				public void init(Configuration conf) {};
 			};
 		}		
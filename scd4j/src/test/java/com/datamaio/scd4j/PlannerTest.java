@@ -0,0 +1,155 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static com.datamaio.scd4j.Plan.Action.ADD;
+import static com.datamaio.scd4j.Plan.Action.DELETE;
+import static com.datamaio.scd4j.Plan.Action.MODIFY;
+import static com.datamaio.scd4j.Plan.Action.UNCHANGED;
+import static com.datamaio.scd4j.Plan.Action.UNKNOWN;
+import static com.datamaio.scd4j.conf.Configuration.build;
+import static java.nio.file.Files.exists;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.Plan.Change;
+import com.datamaio.scd4j.util.io.FileUtils;
+import com.datamaio.scd4j.util.io.PathUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class PlannerTest {
+	private Path root;
+	private Path fs;
+	private Path modules;
+	private Path module;
+	
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("root");
+		fs = FileUtils.createDirectories(PathUtils.get(root, "fs"));
+		modules = FileUtils.createDirectories(PathUtils.get(root, "modules"));
+		module = FileUtils.createDirectories(PathUtils.get(modules, fs));
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(root);
+	}
+	
+	@Test
+	public void plan() throws Exception {
+		write(module, "new.txt", "new");
+		write(module, "same.txt", "same");
+		write(fs, "same.txt", "same");
+		write(module, "changed.txt", "changed");
+		write(fs, "changed.txt", "original");
+		write(module, "old.txt.del", "");
+		write(fs, "old.txt", "old");
+		write(module, "dir/conf.txt.tmpl", "lang=${favlang}");
+		write(module, "hooked.txt", "hooked");
+		write(module, "hooked.txt.hook", "pre {\n Files.createFile(Paths.get(target + \".ran\"))\n CONTINUE\n}");
+		
+		Map<String, Object> props = new HashMap<>();
+		props.put("favlang", "groovy");
+		Plan plan = new Planner(build(modules, props)).plan();
+		
+		List<Change> changes = plan.getChanges();
+		assertThat(changes.size(), is(6));
+		assertChange(changes.get(0), MODIFY, "changed.txt", 7);
+		assertChange(changes.get(1), ADD, "dir/conf.txt", 11);
+		assertChange(changes.get(2), ADD, "hooked.txt", 6);
+		assertThat(changes.get(2).hasHook(), is(true));
+		assertChange(changes.get(3), ADD, "new.txt", 3);
+		assertChange(changes.get(4), DELETE, "old.txt", 3);
+		assertChange(changes.get(5), UNCHANGED, "same.txt", 4);
+		assertThat(plan.getBytes(ADD), is(20L));
+		assertThat(plan.isEmpty(), is(false));
+		
+		// no side effects at all
+		assertThat(exists(fs.resolve("new.txt")), is(false));
+		assertThat(exists(fs.resolve("dir")), is(false));
+		assertThat(exists(fs.resolve("hooked.txt.ran")), is(false));
+		assertThat(exists(fs.resolve("old.txt")), is(true));
+		assertThat(new String(Files.readAllBytes(fs.resolve("changed.txt"))), is("original"));
+	}
+	
+	@Test
+	public void nothingToDo() throws Exception {
+		write(module, "same.txt", "same");
+		write(fs, "same.txt", "same");
+		write(module, "gone.txt.del", "");
+		
+		Plan plan = new Planner(build(modules)).plan();
+		
+		assertThat(plan.getChanges().size(), is(1));
+		assertThat(plan.isEmpty(), is(true));
+	}
+	
+	@Test
+	public void variablesSetByModuleHookAreUnknown() throws Exception {
+		write(module, "Module.hook", "set(\"nodeDir\", \"node1\")\nset(\"httpPort\", 8080)");
+		write(module, "@nodeDir@/conf.txt", "conf");
+		write(module, "app.txt.tmpl", "port=${httpPort}");
+		write(module, "same.txt", "same");
+		write(fs, "same.txt", "same");
+		
+		Plan plan = new Planner(build(modules)).plan();
+		
+		List<Change> changes = plan.getChanges();
+		assertThat(changes.size(), is(3));
+		assertChange(changes.get(0), UNKNOWN, "app.txt", 0);
+		assertChange(changes.get(1), UNCHANGED, "same.txt", 4);
+		// the target is not known, so the source is reported
+		assertThat(changes.get(2).getAction(), is(UNKNOWN));
+		assertThat(changes.get(2).getTarget(), is(module.resolve("@nodeDir@/conf.txt")));
+		assertThat(changes.get(2).getCause(), is("Variable nodeDir was not declared."));
+		assertThat(plan.isEmpty(), is(false));
+		assertThat(exists(fs.resolve("node1")), is(false));
+	}
+	
+	private void assertChange(Change change, Plan.Action action, String target, long bytes) {
+		assertThat(change.getAction(), is(action));
+		assertThat(change.getTarget(), is(fs.resolve(target)));
+		assertThat(change.getBytes(), is(bytes));
+	}
+	
+	private void write(Path dir, String file, String content) throws Exception {
+		Path path = dir.resolve(file);
+		FileUtils.createDirectories(path.getParent());
+		Files.write(path, content.getBytes());
+	}
+}
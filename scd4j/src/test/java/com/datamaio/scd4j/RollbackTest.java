@@ -0,0 +1,146 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j;
+
+import static com.datamaio.scd4j.conf.Configuration.build;
+import static java.nio.file.Files.exists;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.BackupRun;
+import com.datamaio.scd4j.util.LogHelper;
+import com.datamaio.scd4j.util.io.FileUtils;
+import com.datamaio.scd4j.util.io.PathUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class RollbackTest {
+	private Path root;
+	private Path fs;
+	private Path modules;
+	private Path module;
+	
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("root");
+		fs = FileUtils.createDirectories(PathUtils.get(root, "fs"));
+		modules = FileUtils.createDirectories(PathUtils.get(root, "modules"));
+		module = FileUtils.createDirectories(PathUtils.get(modules, fs));
+	}
+	
+	@After
+	public void tearDown() {
+		LogHelper.closeAndRemoveFileHandler();
+		Path base = Paths.get(".").toAbsolutePath();
+		FileUtils.delete(PathUtils.get(base, "backup"));
+		FileUtils.delete(PathUtils.get(base, "log"));
+		FileUtils.delete(PathUtils.get(base, "state"));
+		FileUtils.delete(root);
+	}
+	
+	@Test
+	public void rollback() throws Exception {
+		write(module, "new.txt", "new");
+		write(module, "dir/new.txt", "new");
+		write(module, "changed.txt", "changed");
+		write(fs, "changed.txt", "original");
+		write(module, "old.txt.del", "");
+		write(fs, "old.txt", "old");
+		write(module, "same.txt", "same");
+		write(fs, "same.txt", "same");
+		
+		new EnvConfigurator(build(modules)).execute();
+		assertThat(read(fs, "changed.txt"), is("changed"));
+		assertThat(exists(fs.resolve("old.txt")), is(false));
+		
+		Rollback rollback = new Rollback(build(modules));
+		assertThat(rollback.executions().size(), is(1));
+		BackupRun execution = older(rollback.execution(null));
+		assertThat(rollback.execution("20140101000000"), is(execution));
+		assertThat(rollback.execution("20140101000001"), is(nullValue()));
+		rollback.rollback(execution);
+		
+		assertThat(read(fs, "changed.txt"), is("original"));
+		assertThat(read(fs, "old.txt"), is("old"));
+		assertThat(read(fs, "same.txt"), is("same"));
+		assertThat(exists(fs.resolve("new.txt")), is(false));
+		assertThat(exists(fs.resolve("dir")), is(false));
+		
+		// the rollback itself can be rolled back
+		assertThat(rollback.executions().size(), is(2));
+		assertThat(rollback.execution(null).load().size(), is(5));
+	}
+	
+	@Test
+	public void addedDirectoriesAreRemovedWhenEmpty() throws Exception {
+		write(module, "a/b/c/new.txt", "new");
+		write(module, "a/kept/new.txt", "new");
+		
+		new EnvConfigurator(build(modules)).execute();
+		write(fs, "a/kept/other.txt", "not installed by scd4j");
+		
+		Rollback rollback = new Rollback(build(modules));
+		rollback.rollback(rollback.execution(null));
+		
+		assertThat(exists(fs.resolve("a/b")), is(false));
+		assertThat(exists(fs.resolve("a/kept/new.txt")), is(false));
+		assertThat(read(fs, "a/kept/other.txt"), is("not installed by scd4j"));
+		assertThat(exists(fs), is(true));
+	}
+	
+	@Test
+	public void nothingToRollback() throws Exception {
+		assertThat(new Rollback(build(modules)).execution(null), is(nullValue()));
+	}
+	
+	/** Executions within the same second would share the backup */
+	private BackupRun older(BackupRun execution) throws Exception {
+		Path dir = execution.getDir();
+		Path older = dir.resolveSibling(dir.getFileName().toString().replaceFirst("_\\d{14}$", "_20140101000000"));
+		Files.move(dir, older);
+		older.resolve(BackupRun.MANIFEST).toFile().setLastModified(System.currentTimeMillis() - 60000);
+		return new BackupRun(older);
+	}
+	
+	private String read(Path dir, String file) throws Exception {
+		return new String(Files.readAllBytes(dir.resolve(file)));
+	}
+	
+	private void write(Path dir, String file, String content) throws Exception {
+		Path path = dir.resolve(file);
+		FileUtils.createDirectories(path.getParent());
+		Files.write(path, content.getBytes());
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.hooks.file.FileHook;
+import com.datamaio.scd4j.hooks.module.ModuleHook;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookCacheTest {
+	private static final String SCRIPT = "pre { CONTINUE }\npost { println target }";
+	
+	private Path dir;
+	
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("hookcache");
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void compileAndStore() {
+		Class<? extends Hook> clazz = new HookCache(dir).load(SCRIPT, "f.txt.hook", FileHook.class);
+		
+		assertThat(FileHook.class.isAssignableFrom(clazz), is(true));
+		assertThat(FileUtils.ls(dir).size(), is(1));
+	}
+	
+	@Test
+	public void loadFromCache() throws Exception {
+		Class<? extends Hook> compiled = new HookCache(dir).load(SCRIPT, "f.txt.hook", FileHook.class);
+		Path entry = FileUtils.ls(dir).get(0);
+		FileTime before = Files.getLastModifiedTime(entry);
+		
+		Class<? extends Hook> cached = new HookCache(dir).load(SCRIPT, "f.txt.hook", FileHook.class);
+		
+		assertThat(cached.getName(), is(compiled.getName()));
+		assertThat(FileUtils.ls(dir).size(), is(1));
+		assertThat(Files.getLastModifiedTime(entry), is(before));
+	}
+	
+	@Test
+	public void keyDependsOnScriptBaseClassAndCompilationMode() {
+		String key = HookCache.key(SCRIPT, FileHook.class, false);
+		assertThat(HookCache.key(SCRIPT, FileHook.class, false), is(key));
+		assertThat(HookCache.key(SCRIPT, ModuleHook.class, false), not(is(key)));
+		assertThat(HookCache.key(SCRIPT + " ", FileHook.class, false), not(is(key)));
+		assertThat(HookCache.key(SCRIPT, FileHook.class, true), not(is(key)));
+	}
+}
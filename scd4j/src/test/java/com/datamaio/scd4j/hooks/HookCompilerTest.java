@@ -0,0 +1,126 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.hooks.file.FileHook;
+import com.datamaio.scd4j.hooks.module.ModuleHook;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookCompilerTest {
+	private Path module;
+	private Path output;
+	private Path userCache;
+	
+	@Before
+	public void setUp() throws Exception {
+		module = Files.createTempDirectory("module");
+		output = Files.createTempDirectory("hooks");
+		userCache = Files.createTempDirectory("usercache");
+		
+		Files.write(module.resolve("Module.hook"), "pre { CONTINUE }".getBytes());
+		FileUtils.createDirectories(module.resolve("dir"));
+		Files.write(module.resolve("dir/f.txt.hook"), "post { println target }".getBytes());
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(module);
+		FileUtils.delete(output);
+		FileUtils.delete(userCache);
+	}
+	
+	@Test
+	public void compileAllHooksOfModule() {
+		List<Path> hooks = compile();
+		
+		assertThat(hooks.size(), is(2));
+		assertThat(FileUtils.ls(output).size(), is(2));
+	}
+	
+	@Test
+	public void precompiledHooksAreNotCompiledAgain() {
+		compile();
+		
+		HookCache cache = new HookCache(userCache, output);
+		String moduleScript = HookEvaluator.buildScript(module.resolve("Module.hook"));
+		String fileScript = HookEvaluator.buildScript(module.resolve("dir/f.txt.hook"));
+		assertThat(ModuleHook.class.isAssignableFrom(cache.load(moduleScript, "Module.hook", ModuleHook.class)), is(true));
+		assertThat(FileHook.class.isAssignableFrom(cache.load(fileScript, "f.txt.hook", FileHook.class)), is(true));
+		
+		assertThat(FileUtils.ls(userCache).size(), is(0));
+	}
+	
+	@Test
+	public void compilationErrorsAreReportedWithHookPath() throws Exception {
+		Path broken = module.resolve("dir/broken.txt.hook");
+		Files.write(broken, "pre { CONTINUE ".getBytes());
+		try {
+			compile();
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage(), containsString(broken.toString()));
+		}
+	}
+	
+	@Test
+	public void allCompilationErrorsAreReportedAtOnce() throws Exception {
+		Path broken1 = module.resolve("dir/broken1.txt.hook");
+		Path broken2 = module.resolve("broken2.txt.hook");
+		Files.write(broken1, "pre { CONTINUE ".getBytes());
+		Files.write(broken2, "post { def }".getBytes());
+		try {
+			compile();
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage(), containsString("2 hook(s) could not be compiled"));
+			assertThat(e.getMessage(), containsString(broken1.toString()));
+			assertThat(e.getMessage(), containsString(broken2.toString()));
+		}
+		// the valid ones were compiled anyway
+		assertThat(FileUtils.ls(output).size(), is(2));
+	}
+	
+	private List<Path> compile() {
+		try (HookRuntime runtime = new HookRuntime(new HookCache(output))) {
+			return new HookCompiler(runtime).compile(module);
+		}
+	}
+}
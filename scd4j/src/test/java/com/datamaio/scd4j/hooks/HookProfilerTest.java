@@ -0,0 +1,103 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static com.datamaio.scd4j.hooks.HookProfiler.Phase.COMPILE;
+import static com.datamaio.scd4j.hooks.HookProfiler.Phase.POST;
+import static com.datamaio.scd4j.hooks.HookProfiler.Phase.PRE;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.datamaio.scd4j.hooks.HookProfiler.Profile;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookProfilerTest {
+	private static final Path FAST = Paths.get("fast.txt.hook");
+	private static final Path SLOW = Paths.get("slow.txt.hook");
+	
+	@Test
+	public void sortedBySlowestFirst() {
+		HookProfiler profiler = new HookProfiler();
+		profiler.compiled(FAST, 1_000_000);
+		profiler.profile(FAST, PRE, 2_000_000, 0, 0);
+		profiler.profile(SLOW, PRE, 5_000_000, 1, 4_000_000);
+		profiler.profile(SLOW, POST, 3_000_000, 2, 2_000_000);
+		
+		List<Profile> profiles = profiler.getProfiles();
+		assertThat(profiles.size(), is(2));
+		
+		Profile slow = profiles.get(0);
+		assertThat(slow.getHook(), is(SLOW));
+		assertThat(slow.getTotalNanos(), is(8_000_000L));
+		assertThat(slow.getProcesses(), is(3));
+		assertThat(slow.getWaitNanos(), is(6_000_000L));
+		
+		Profile fast = profiles.get(1);
+		assertThat(fast.getHook(), is(FAST));
+		assertThat(fast.getNanos(COMPILE), is(1_000_000L));
+		assertThat(fast.getTotalNanos(), is(3_000_000L));
+	}
+	
+	@Test
+	public void profileAction() {
+		HookProfiler profiler = new HookProfiler();
+		
+		boolean result = profiler.profile(FAST, PRE, () -> true);
+		
+		assertThat(result, is(true));
+		assertThat(profiler.getProfiles().get(0).getProcesses(), is(0));
+	}
+	
+	@Test
+	public void writeNextToLogFile() throws Exception {
+		Path dir = Files.createTempDirectory("hookprofile");
+		try {
+			HookProfiler profiler = new HookProfiler();
+			profiler.profile(SLOW, PRE, 5_000_000, 1, 4_000_000);
+			
+			profiler.write(dir.resolve("log").resolve("dev_1.log"));
+			
+			String txt = FileUtils.read(dir.resolve("log").resolve("dev_1.hooks.txt"));
+			assertThat(txt, containsString("5.0"));
+			assertThat(txt, containsString("slow.txt.hook"));
+			String json = FileUtils.read(dir.resolve("log").resolve("dev_1.hooks.json"));
+			assertThat(json, containsString("\"hook\":\"slow.txt.hook\", \"totalMs\":5.000"));
+			assertThat(json, containsString("\"commandWaitMs\":4.000, \"commands\":1"));
+		} finally {
+			FileUtils.delete(dir);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.hooks;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import groovy.lang.Binding;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.conf.Configuration;
+import com.datamaio.scd4j.hooks.file.FileHook;
+import com.datamaio.scd4j.hooks.module.ModuleHook;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class HookRuntimeTest {
+	private static final int HOOKS = 500;
+	private static final long MAX_METASPACE_GROWTH = 32 * 1024 * 1024;
+	
+	private Path module;
+	private Path cacheDir;
+	private HookRuntime runtime;
+	
+	@Before
+	public void setUp() throws Exception {
+		module = Files.createTempDirectory("module");
+		cacheDir = Files.createTempDirectory("hookcache");
+		runtime = new HookRuntime(new HookCache(cacheDir));
+	}
+	
+	@After
+	public void tearDown() {
+		runtime.close();
+		FileUtils.delete(module);
+		FileUtils.delete(cacheDir);
+	}
+	
+	@Test
+	public void sameHookContentSharesTheSameClass() throws Exception {
+		Path first = write("a.txt.hook", "pre { CONTINUE }");
+		Path second = write("b.txt.hook", "pre { CONTINUE }");
+		
+		Class<? extends Hook> c1 = runtime.load(script(first), first, FileHook.class);
+		Class<? extends Hook> c2 = runtime.load(script(second), second, FileHook.class);
+		
+		assertThat(c1==c2, is(true));
+		assertThat(runtime.size(), is(1));
+	}
+	
+	@Test
+	public void hooksWithSameNameLiveInTheSameLoader() throws Exception {
+		Path first = write("m1/Module.hook", "pre { CONTINUE }");
+		Path second = write("m2/Module.hook", "pre { ABORT }");
+		
+		Class<? extends Hook> c1 = runtime.load(script(first), first, ModuleHook.class);
+		Class<? extends Hook> c2 = runtime.load(script(second), second, ModuleHook.class);
+		
+		assertThat(c1.getName(), not(is(c2.getName())));
+		assertThat(c1.getClassLoader()==c2.getClassLoader(), is(true));
+		assertThat(runtime.size(), is(2));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void closedRuntimeCannotLoadHooks() throws Exception {
+		Path hook = write("a.txt.hook", "pre { CONTINUE }");
+		runtime.close();
+		runtime.load(script(hook), hook, FileHook.class);
+	}
+	
+	@Test
+	public void compileStatic() throws Exception {
+		Path hook = write("a.txt.hook", "pre { log(target); CONTINUE }\npost { chmod('755', target) }");
+		try (HookRuntime staticRuntime = new HookRuntime(new HookCache(cacheDir), true)) {
+			Class<? extends Hook> clazz = staticRuntime.load(script(hook), hook, FileHook.class);
+			assertThat(FileHook.class.isAssignableFrom(clazz), is(true));
+		}
+	}
+	
+	@Test
+	public void compileStaticFailsOnMisspelledDsl() throws Exception {
+		Path hook = write("a.txt.hook", "post { chmdo('755', target) }");
+		
+		// it is only found at runtime when dynamically compiled
+		runtime.load(script(hook), hook, FileHook.class);
+		
+		try (HookRuntime staticRuntime = new HookRuntime(new HookCache(cacheDir), true)) {
+			staticRuntime.load(script(hook), hook, FileHook.class);
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage(), containsString("chmdo"));
+		}
+	}
+	
+	@Test
+	public void hookClassesAreReleasedOnClose() throws Exception {
+		long before = metaspaceUsed();
+		HookRuntime hooks = new HookRuntime(new HookCache(cacheDir));
+		WeakReference<ClassLoader> loader = runDistinctHooks(hooks);
+		assertThat(hooks.size(), is(HOOKS));
+		
+		hooks.close();
+		// the JDK keeps the type of the last adapted method handle, i.e. a closure of
+		// the last hook executed, until the next execution adapts another one
+		try (HookRuntime next = new HookRuntime(new HookCache(cacheDir))) {
+			Path hook = write("next.txt.hook", "pre { CONTINUE }\npost { log('next') }");
+			run(next.load(script(hook), hook, FileHook.class), Configuration.build(module));
+		}
+		// soft references are cleared as well (see build.gradle)
+		for (int i = 0; i < 20 && loader.get()!=null; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		
+		assertThat(loader.get()==null, is(true));
+		assertThat(metaspaceUsed() - before < MAX_METASPACE_GROWTH, is(true));
+	}
+	
+	/** Executes {@link #HOOKS} hooks with distinct content, keeping no reference to them at all */
+	private WeakReference<ClassLoader> runDistinctHooks(HookRuntime hooks) throws Exception {
+		Configuration conf = Configuration.build(module);
+		ClassLoader loader = null;
+		for (int i = 0; i < HOOKS; i++) {
+			Path hook = write("f" + i + ".txt.hook", "pre { CONTINUE }\npost { log('f" + i + "') }");
+			Class<? extends Hook> clazz = hooks.load(script(hook), hook, FileHook.class);
+			run(clazz, conf);
+			loader = clazz.getClassLoader();
+		}
+		return new WeakReference<>(loader);
+	}
+	
+	private void run(Class<? extends Hook> clazz, Configuration conf) {
+		Hook h = (Hook) InvokerHelper.createScript(clazz, new Binding());
+		h.setConf(conf);
+		h.run();
+		assertThat(h._pre(), is(HookPreResult.CONTINUE));
+		h._post();
+		h._finish();
+	}
+	
+	private Path write(String name, String content) throws Exception {
+		Path file = module.resolve(name);
+		FileUtils.createDirectories(file.getParent());
+		return Files.write(file, content.getBytes());
+	}
+	
+	private String script(Path hook) {
+		return HookEvaluator.buildScript(hook);
+	}
+	
+	private long metaspaceUsed() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getName().contains("Metaspace")) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+}
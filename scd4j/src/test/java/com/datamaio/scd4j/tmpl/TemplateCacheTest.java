@@ -0,0 +1,96 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.tmpl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class TemplateCacheTest {
+	private Path dir;
+	
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("tmpl");
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void compileOncePerEngineAndContent() throws Exception {
+		Path a = Files.write(dir.resolve("a.tmpl"), "a".getBytes());
+		Path b = Files.write(dir.resolve("b.tmpl"), "b".getBytes());
+		AtomicInteger compiled = new AtomicInteger();
+		TemplateCache cache = new TemplateCache();
+		
+		for (int i = 0; i < 7; i++) {
+			cache.get("groovy", a, p -> compiled.incrementAndGet());
+			cache.get("groovy", b, p -> compiled.incrementAndGet());
+		}
+		assertThat(compiled.get(), is(2));
+		
+		cache.get("velocity", a, p -> compiled.incrementAndGet());
+		assertThat(compiled.get(), is(3));
+		
+		// a changed template replaces the previous one
+		Files.write(a, "changed".getBytes());
+		assertThat(cache.get("groovy", a, p -> "recompiled"), is((Object) "recompiled"));
+		assertThat(cache.get("groovy", a, p -> compiled.incrementAndGet()), is((Object) "recompiled"));
+		assertThat(cache.size(), is(3));
+	}
+	
+	@Test
+	public void recompileOnlyWhenContentChanges() throws Exception {
+		Path a = Files.write(dir.resolve("a.tmpl"), "a".getBytes());
+		TemplateCache cache = new TemplateCache();
+		assertThat(cache.get("groovy", a, p -> "first"), is((Object) "first"));
+		
+		// touched, but the same content
+		Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 10000));
+		assertThat(cache.get("groovy", a, p -> "touched"), is((Object) "first"));
+		
+		// same size, but another content
+		Files.write(a, "b".getBytes());
+		Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 20000));
+		assertThat(cache.get("groovy", a, p -> "changed"), is((Object) "changed"));
+		assertThat(cache.size(), is(1));
+	}
+}
@@ -40,6 +40,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.datamaio.scd4j.exception.MissingPropertyException;
+import com.datamaio.scd4j.tmpl.TemplateCache;
 import com.datamaio.scd4j.tmpl.TemplateEngine;
 import com.datamaio.scd4j.tmpl.TemplateEngineConfig;
 import com.datamaio.scd4j.util.io.FileUtils;
@@ -127,6 +128,28 @@ public abstract class TemplateEngineTest {
 		assertThat(result, is(equalTo("Person = fernando\nPerson = mateus\n")));
 	}
 	
+	@Test
+	public void testCachedTemplate() throws Exception {
+		Path path = Files.write(PathUtils.get(root, dir, "Cached.tmpl"), "cached".getBytes());
+		TemplateCache cache = new TemplateCache();
+		TemplateEngineConfig conf = new TemplateEngineConfig(dir);
+		assertThat(merge(TemplateEngine.get(conf, cache), path), is(equalTo("cached")));
+		assertThat(merge(TemplateEngine.get(conf, cache), path), is(equalTo("cached")));
+		assertThat(cache.size(), is(1));
+		
+		Files.write(path, "changed".getBytes());
+		assertThat(merge(TemplateEngine.get(conf, cache), path), is(equalTo("changed")));
+		assertThat(cache.size(), is(1));
+	}
+	
+	private static String merge(TemplateEngine engine, Path path) {
+		StringWriter writer = new StringWriter();
+		engine.createTemplate(path)
+			.make()
+			.writeTo(writer);
+		return writer.toString();
+	}
+	
 	public static final class Person {
 		private String name;
 		public Person(String name) {
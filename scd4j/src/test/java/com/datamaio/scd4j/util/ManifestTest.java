@@ -0,0 +1,171 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.Manifest.Source;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class ManifestTest {
+	private Path dir;
+	private Path source;
+	private Path target;
+	
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("manifest");
+		source = Files.write(dir.resolve("source.txt"), "content".getBytes());
+		target = Files.write(dir.resolve("target.txt"), "content".getBytes());
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void saveAndLoad() {
+		Source src = Source.of(source);
+		String hash = src.getHash();
+		Manifest manifest = new Manifest();
+		manifest.record(target, src, "props", "out");
+		
+		Path file = dir.resolve("state").resolve("m.manifest");
+		manifest.save(file);
+		Manifest loaded = Manifest.load(file);
+		
+		assertThat(loaded.size(), is(1));
+		assertThat(loaded.get(target).getSourceHash(), is(hash));
+		assertThat(loaded.get(target).getSourceSize(), is(7L));
+		assertThat(loaded.get(target).getPropsHash(), is("props"));
+		assertThat(loaded.get(target).getOutputHash(), is("out"));
+		assertThat(loaded.get(target).getSize(), is(7L));
+		assertThat(loaded.isUnchanged(target, Source.of(source), "props"), is(true));
+	}
+	
+	@Test
+	public void changesAreDetected() throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.record(target, Source.of(source), "props", "out");
+		
+		assertThat(manifest.isUnchanged(target, Source.of(source), "other props"), is(false));
+		assertThat(manifest.isUnchanged(dir.resolve("none.txt"), Source.of(source), null), is(false));
+		
+		Files.write(source, "other content".getBytes());
+		assertThat(manifest.isUnchanged(target, Source.of(source), "props"), is(false));
+		
+		Files.write(source, "content".getBytes());
+		Files.setLastModifiedTime(target, FileTime.fromMillis(1000));
+		assertThat(manifest.isUnchanged(target, Source.of(source), "props"), is(false));
+	}
+	
+	@Test
+	public void sourcesAreOnlyHashedWhenTouched() throws Exception {
+		Manifest manifest = new Manifest();
+		Source src = Source.of(source);
+		manifest.record(target, src, null, null);
+		assertThat(manifest.get(target).getSourceHash(), is(nullValue()));
+		
+		// neither the source nor the target were touched, so nothing is hashed
+		assertThat(manifest.isUnchanged(target, Source.of(source), null), is(true));
+		
+		// touched, with the same content, but without a hash to compare with
+		Files.setLastModifiedTime(source, FileTime.fromMillis(1000));
+		assertThat(manifest.isUnchanged(target, Source.of(source), null), is(false));
+		
+		src = Source.of(source);
+		src.getHash();
+		manifest.record(target, src, null, null);
+		Files.setLastModifiedTime(source, FileTime.fromMillis(2000));
+		assertThat(manifest.isUnchanged(target, Source.of(source), null), is(true));
+		assertThat(manifest.get(target).getOutputHash(), is(src.getHash()));
+	}
+	
+	@Test
+	public void targetHashIsKnownWhileLeftAsRecorded() throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.record(target, Source.of(source), "props", "out");
+		manifest.record(source, Source.of(source), null, null);
+		
+		assertThat(manifest.hashOf(target), is("out"));
+		assertThat(manifest.hashOf(source), is(nullValue()));
+		assertThat(manifest.hashOf(dir.resolve("none.txt")), is(nullValue()));
+		
+		Files.write(target, "changed".getBytes());
+		Files.setLastModifiedTime(target, FileTime.fromMillis(1000));
+		assertThat(manifest.hashOf(target), is(nullValue()));
+	}
+	
+	@Test
+	public void filesOtherThanTemplatesHaveNoPropsHash() {
+		Manifest manifest = new Manifest();
+		manifest.record(target, Source.of(source), null, null);
+		
+		Path file = dir.resolve("m.manifest");
+		manifest.save(file);
+		Manifest loaded = Manifest.load(file);
+		
+		assertThat(loaded.get(target).getPropsHash(), is(nullValue()));
+		assertThat(loaded.isUnchanged(target, Source.of(source), null), is(true));
+		assertThat(loaded.isUnchanged(target, Source.of(source), "props"), is(false));
+	}
+	
+	@Test
+	public void missingOrCorruptedManifestIsEmpty() throws Exception {
+		assertThat(Manifest.load(dir.resolve("none.manifest")).size(), is(0));
+		
+		Path corrupted = Files.write(dir.resolve("corrupted.manifest"), "garbage".getBytes());
+		assertThat(Manifest.load(corrupted).size(), is(0));
+	}
+	
+	@Test
+	public void propsHashDoesNotDependOnOrder() {
+		Map<String, Object> a = new HashMap<>();
+		a.put("x", "1");
+		a.put("y", 2);
+		Map<String, Object> b = new LinkedHashMap<>();
+		b.put("y", 2);
+		b.put("x", "1");
+		
+		assertThat(Manifest.hash(a), is(Manifest.hash(b)));
+	}
+}
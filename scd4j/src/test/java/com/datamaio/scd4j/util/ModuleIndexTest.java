@@ -0,0 +1,199 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.ModuleIndex.Kind;
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class ModuleIndexTest {
+	private Path module;
+	private ModuleIndex index;
+	
+	@Before
+	public void setUp() throws Exception {
+		module = Files.createTempDirectory("module");
+		Path dir = FileUtils.createDirectories(module.resolve("opt/@name@"));
+		Files.createFile(dir.resolve("f.txt"));
+		Files.createFile(dir.resolve("t.txt.tmpl"));
+		Files.createFile(dir.resolve("t.txt.tmpl.hook"));
+		Files.createFile(dir.resolve("d.txt.del"));
+		FileUtils.createDirectories(module.resolve("opt/skip/sub"));
+		Files.createFile(module.resolve("opt/skip/sub/s.txt"));
+		
+		index = new ModuleIndex(module, new PathHelper(props(), module));
+	}
+	
+	private Map<String, Object> props() {
+		Map<String, Object> props = new HashMap<>();
+		props.put("name", "app");
+		return props;
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(module);
+	}
+	
+	@Test
+	public void classifyAndResolveTargets() {
+		Path dir = module.resolve("opt/@name@");
+		assertThat(index.get(dir).getKind(), is(Kind.DIRECTORY));
+		assertThat(index.get(dir.resolve("f.txt")).getKind(), is(Kind.PLAIN));
+		assertThat(index.get(dir.resolve("t.txt.tmpl")).getKind(), is(Kind.TEMPLATE));
+		assertThat(index.get(dir.resolve("t.txt.tmpl.hook")).getKind(), is(Kind.HOOK));
+		assertThat(index.get(dir.resolve("d.txt.del")).getKind(), is(Kind.DELETE));
+		
+		assertThat(index.get(dir.resolve("t.txt.tmpl")).getTarget().toString(), is("/opt/app/t.txt"));
+		assertThat(index.get(dir.resolve("d.txt.del")).getTarget().toString(), is("/opt/app/d.txt"));
+		assertThat(index.get(dir.resolve("f.txt")).getTarget().toString(), is("/opt/app/f.txt"));
+		
+		assertThat(index.hasHook(dir.resolve("t.txt.tmpl")), is(true));
+		assertThat(index.hasHook(dir.resolve("f.txt")), is(false));
+		assertThat(index.getHooks().size(), is(1));
+	}
+	
+	@Test
+	public void targetsAreResolvedWhenFirstNeeded() throws IOException {
+		// e.g. Module.hook sets the property after the index is built
+		Map<String, Object> props = new HashMap<>();
+		ModuleIndex lazy = new ModuleIndex(module, new PathHelper(props, module));
+		props.put("name", "late");
+		
+		Path file = module.resolve("opt/@name@/f.txt");
+		assertThat(lazy.get(file).getTarget().toString(), is("/opt/late/f.txt"));
+	}
+	
+	@Test
+	public void walkLikeFileSystem() throws IOException {
+		List<String> expected = new ArrayList<>();
+		Files.walkFileTree(module, new Recorder(expected));
+		
+		List<String> replayed = new ArrayList<>();
+		index.walk(new Recorder(replayed));
+		
+		assertThat(replayed, is(expected));
+	}
+	
+	@Test
+	public void walkSkippingSubtree() throws IOException {
+		final Path skip = module.resolve("opt/skip");
+		
+		List<String> expected = new ArrayList<>();
+		Files.walkFileTree(module, new Recorder(expected, skip));
+		
+		List<String> replayed = new ArrayList<>();
+		index.walk(new Recorder(replayed, skip));
+		
+		assertThat(replayed, is(expected));
+		assertThat(replayed.contains("FILE " + module.resolve("opt/skip/sub/s.txt")), is(false));
+	}
+	
+	@Test
+	public void streamingWalkKeepsOnlyTheVisitedEntry() throws IOException {
+		final ModuleIndex streaming = new ModuleIndex(module, new PathHelper(props(), module), true);
+		assertThat(streaming.isStreaming(), is(true));
+		assertThat(streaming.getHooks(), is(index.getHooks()));
+		
+		List<String> expected = new ArrayList<>();
+		index.walk(new Recorder(expected, module.resolve("opt/skip"), index));
+		
+		List<String> streamed = new ArrayList<>();
+		streaming.walk(new Recorder(streamed, module.resolve("opt/skip"), streaming));
+		
+		assertThat(streamed, is(expected));
+		assertThat(streamed.contains("FILE " + module.resolve("opt/@name@/t.txt.tmpl") + " TEMPLATE /opt/app/t.txt"), is(true));
+		try {
+			streaming.getEntries();
+			fail("entries must not be kept");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+	
+	private static class Recorder extends SimpleFileVisitor<Path> {
+		private final List<String> events;
+		private final Path skip;
+		private final ModuleIndex index;
+		
+		Recorder(List<String> events) {
+			this(events, null);
+		}
+		
+		Recorder(List<String> events, Path skip) {
+			this(events, skip, null);
+		}
+		
+		/** Also records the kind and target of each entry, as known by the index while visited */
+		Recorder(List<String> events, Path skip, ModuleIndex index) {
+			this.events = events;
+			this.skip = skip;
+			this.index = index;
+		}
+		
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+			events.add("PRE " + dir + entry(dir));
+			return dir.equals(skip) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+		}
+		
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+			events.add("FILE " + file + entry(file));
+			return FileVisitResult.CONTINUE;
+		}
+		
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+			events.add("POST " + dir);
+			return FileVisitResult.CONTINUE;
+		}
+		
+		private String entry(Path source) {
+			return index==null ? "" : " " + index.get(source).getKind() + " " + index.get(source).getTarget();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.io.FileUtils;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class ModuleWatcherTest {
+	private Path module;
+	private ModuleWatcher watcher;
+	
+	@Before
+	public void setUp() throws Exception {
+		module = Files.createTempDirectory("module");
+		FileUtils.createDirectories(module.resolve("opt"));
+		Files.write(module.resolve("opt/a.txt"), "a".getBytes());
+		watcher = new ModuleWatcher(Arrays.asList(module), 300);
+	}
+	
+	@After
+	public void tearDown() {
+		watcher.close();
+		FileUtils.delete(module);
+	}
+	
+	@Test(timeout=10000)
+	public void changesAreTakenInOneBatch() throws Exception {
+		Files.write(module.resolve("opt/a.txt"), "changed".getBytes());
+		Files.write(module.resolve("opt/a.txt~"), "editor backup".getBytes());
+		FileUtils.createDirectories(module.resolve("opt/new/sub"));
+		Files.write(module.resolve("opt/new/sub/b.txt"), "b".getBytes());
+		
+		Set<Path> changed = watcher.take();
+		Set<Path> expected = new TreeSet<>(Arrays.asList(module.resolve("opt/a.txt"), module.resolve("opt/new/sub/b.txt")));
+		assertThat(changed, is(expected));
+	}
+}
@@ -65,6 +65,26 @@ public class PathHelperTest {
 		assertThat(vpu.replaceVars("/opt/@manydirs@/test"), is("/opt/a/b/c/test"));
 	}
 	
+	@Test
+	public void replaceManyVarsPerSegment() throws IOException{		
+		PathHelper vpu = new PathHelper(conf, null);
+		assertThat(vpu.replaceVars("/opt/@begin@-@end@/@all@@end@.txt"), is("/opt/VAL_begin-VAL_end/VAL_allVAL_end.txt"));
+		assertThat(vpu.replaceVars("/opt/mail@domain/test"), is("/opt/mail@domain/test"));
+	}
+	
+	@Test
+	public void segmentsAreTokenizedOnce() throws IOException{		
+		assertThat(PathHelper.tokenize("a-@var@.txt"), is(new String[]{"a-", "var", ".txt"}));
+		assertThat(PathHelper.tokenize("@var@"), is(new String[]{"", "var", ""}));
+		assertThat(PathHelper.tokenize("a@b"), is(new String[]{"a@b"}));
+		
+		// but values are read every time, as hooks may change them
+		PathHelper vpu = new PathHelper(conf, null);
+		assertThat(vpu.replaceVars("/opt/@all@/test"), is("/opt/VAL_all/test"));
+		conf.put("all", "CHANGED");
+		assertThat(vpu.replaceVars("/opt/@all@/test"), is("/opt/CHANGED/test"));
+	}
+	
 	@Test(expected=IllegalStateException.class)
 	public void variableDoNotExists() throws IOException{		
 		PathHelper vpu = new PathHelper(conf, null);
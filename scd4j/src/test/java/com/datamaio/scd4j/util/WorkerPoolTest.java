@@ -0,0 +1,96 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class WorkerPoolTest {
+	
+	@Test
+	public void awaitIsABarrier() {
+		AtomicInteger done = new AtomicInteger();
+		try (WorkerPool pool = new WorkerPool("test", 4)) {
+			for (int i = 0; i < 1000; i++) {
+				pool.submit(() -> {
+					Thread.sleep(0, 1000);
+					done.incrementAndGet();
+				});
+			}
+			pool.await();
+			assertThat(done.get(), is(1000));
+		}
+	}
+	
+	@Test
+	public void nothingIsKeptPerTask() {
+		// e.g. a module with hundreds of thousands of files and no hook (i.e. no barrier)
+		AtomicInteger done = new AtomicInteger();
+		try (WorkerPool pool = new WorkerPool("test", 4)) {
+			for (int i = 0; i < 500_000; i++) {
+				pool.submit(() -> done.incrementAndGet());
+			}
+			pool.await();
+			assertThat(done.get(), is(500_000));
+		}
+	}
+	
+	@Test
+	public void sequentialWhenParallelismIsOne() {
+		Thread caller = Thread.currentThread();
+		try (WorkerPool pool = new WorkerPool("test", 1)) {
+			pool.submit(() -> assertThat(Thread.currentThread(), is(caller)));
+			pool.await();
+		}
+	}
+	
+	@Test
+	public void failuresAreThrownByAwait() {
+		AtomicInteger done = new AtomicInteger();
+		try (WorkerPool pool = new WorkerPool("test", 2)) {
+			pool.submit(() -> { throw new IOException("disk full"); });
+			pool.submit(() -> done.incrementAndGet());
+			try {
+				pool.await();
+				fail("failure expected");
+			} catch (RuntimeException e) {
+				assertThat(e.getCause().getMessage(), is("disk full"));
+			}
+			assertThat(done.get(), is(1));
+			
+			// failures are reported only once
+			pool.await();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datamaio.scd4j.util.io.AtomicWriter.Fsync;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class AtomicWriterTest {
+	private Path dir;
+	
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("atomic");
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void copy() throws Exception {
+		for (Fsync fsync : Fsync.values()) {
+			Path source = Files.write(dir.resolve("source.txt"), fsync.name().getBytes());
+			Path target = Files.write(dir.resolve("target.txt"), "old".getBytes());
+			
+			AtomicWriter writer = new AtomicWriter(fsync, FileUtils.TRANSFER_THRESHOLD);
+			writer.copy(source, target);
+			writer.sync();
+			
+			assertThat(new String(Files.readAllBytes(target)), is(fsync.name()));
+			assertThat(FileUtils.ls(dir).size(), is(2));
+		}
+	}
+	
+	@Test
+	public void readOnlyFilesAreSynced() throws Exception {
+		boolean posix = Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class);
+		for (Fsync fsync : Fsync.values()) {
+			Path source = Files.write(dir.resolve("source.txt"), fsync.name().getBytes());
+			Path target = dir.resolve("target.txt");
+			if(posix) {
+				Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("r--r--r--"));
+			}
+			
+			AtomicWriter writer = new AtomicWriter(fsync, FileUtils.TRANSFER_THRESHOLD);
+			writer.copy(source, target);
+			writer.write("merged".getBytes(), target);
+			writer.sync();
+			
+			assertThat(new String(Files.readAllBytes(target)), is("merged"));
+			if(posix) {
+				assertThat(Files.getPosixFilePermissions(target), is(PosixFilePermissions.fromString("r--r--r--")));
+			}
+			FileUtils.delete(source);
+			FileUtils.delete(target);
+		}
+	}
+	
+	@Test
+	public void writeKeepsPermissions() throws Exception {
+		Path target = Files.write(dir.resolve("standalone.xml"), "old".getBytes());
+		boolean posix = Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class);
+		if(posix) {
+			Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-------"));
+		}
+		
+		new AtomicWriter(Fsync.FILE, FileUtils.TRANSFER_THRESHOLD).write("new".getBytes(), target);
+		
+		assertThat(new String(Files.readAllBytes(target)), is("new"));
+		assertThat(FileUtils.ls(dir).size(), is(1));
+		if(posix) {
+			assertThat(Files.getPosixFilePermissions(target), is(PosixFilePermissions.fromString("rw-------")));
+		}
+	}
+	
+	@Test
+	public void writeThroughSymbolicLinks() throws Exception {
+		Path real = Files.write(dir.resolve("real.conf"), "old".getBytes());
+		Path link = Files.createSymbolicLink(dir.resolve("link.conf"), real);
+		
+		new AtomicWriter(Fsync.NONE, FileUtils.TRANSFER_THRESHOLD).write("new".getBytes(), link);
+		
+		assertThat(Files.isSymbolicLink(link), is(true));
+		assertThat(new String(Files.readAllBytes(real)), is("new"));
+	}
+}
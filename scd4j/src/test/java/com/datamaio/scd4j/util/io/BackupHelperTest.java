@@ -24,14 +24,20 @@
 package com.datamaio.scd4j.util.io;
 
 import static java.nio.file.Files.createTempFile;
-import static java.nio.file.Files.exists;
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -41,6 +47,10 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import com.datamaio.scd4j.conf.Configuration;
 import com.datamaio.scd4j.util.BackupHelper;
+import com.datamaio.scd4j.util.BackupRun;
+import com.datamaio.scd4j.util.BackupRun.Entry;
+import com.datamaio.scd4j.util.BackupRun.Kind;
+import com.datamaio.scd4j.util.BackupStore;
 
 /**
  * This class is responsible for Unit tests on {@link BackupHelper}
@@ -55,24 +65,27 @@ public class BackupHelperTest {
 	@Before
 	public void setUp() throws Exception {
 		Path bkpDir = Files.createTempDirectory("bkpDir");	
-		when(conf.getBackupDir()).thenReturn(bkpDir);
+		when(conf.getBackupStoreDir()).thenReturn(bkpDir);
+		when(conf.getBackupDir()).thenReturn(bkpDir.resolve("module/config_20140101000000"));
+		when(conf.isBackupCompressed()).thenReturn(true);
 	}
 	
 	@Test
 	public void existingBackupDir() throws Exception {
 		Path dirToBkp = Files.createTempDirectory("dirToBkp");
 		
-		FileUtils.createDirectories(PathUtils.get(conf.getBackupDir(), dirToBkp));
+		FileUtils.createDirectories(conf.getBackupDir());
 		Path parentdirfile1 = createTempFile(dirToBkp, "FILE_1", ".tmp");
 		Path parentdirfile2 = createTempFile(dirToBkp, "FILE_2", ".tmp");
 		
-		new BackupHelper(conf).backupFileOrDir(dirToBkp);
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFileOrDir(dirToBkp);
+		helper.close();
 		
-		
-		Path bkp = PathUtils.get(conf.getBackupDir(), dirToBkp);
-		assertThat(exists(bkp), is(true));
-		assertThat(exists(PathUtils.get(bkp, parentdirfile1.getFileName())), is(true));
-		assertThat(exists(PathUtils.get(bkp, parentdirfile2.getFileName())), is(true));
+		Set<Path> bkp = backedUp(helper);
+		assertThat(bkp, hasItem(dirToBkp));
+		assertThat(bkp, hasItem(parentdirfile1));
+		assertThat(bkp, hasItem(parentdirfile2));
 	}
 	
 	@Test
@@ -82,12 +95,14 @@ public class BackupHelperTest {
 		Path parentdirfile1 = createTempFile(dirToBkp, "FILE_1", ".tmp");
 		Path parentdirfile2 = createTempFile(dirToBkp, "FILE_2", ".tmp");
 		
-		new BackupHelper(conf).backupFileOrDir(dirToBkp);
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFileOrDir(dirToBkp);
+		helper.close();
 		
-		Path bkp = PathUtils.get(conf.getBackupDir(), dirToBkp);
-		assertThat(exists(bkp), is(true));
-		assertThat(exists(PathUtils.get(bkp, parentdirfile1.getFileName())), is(true));
-		assertThat(exists(PathUtils.get(bkp, parentdirfile2.getFileName())), is(true));
+		Set<Path> bkp = backedUp(helper);
+		assertThat(bkp, hasItem(dirToBkp));
+		assertThat(bkp, hasItem(parentdirfile1));
+		assertThat(bkp, hasItem(parentdirfile2));
 	}
 	
 	@Test
@@ -95,10 +110,80 @@ public class BackupHelperTest {
 		Path dirToBkp = Files.createTempDirectory("dirToBkp3");		
 	
 		Path parentdirfile1 = createTempFile(dirToBkp, "FILE_1", ".tmp");
+		Files.write(parentdirfile1, "content".getBytes());
+		
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(parentdirfile1);
+		helper.close();
+		
+		List<Entry> entries = helper.getRun().load();
+		assertThat(entries.size(), is(1));
+		assertThat(entries.get(0).getPath(), is(parentdirfile1));
+		assertThat(content(helper, entries.get(0).getHash()), is("content"));
+	}
+	
+	@Test
+	public void onlyReplacedFilesAreLinked() throws IOException {
+		when(conf.isBackupCompressed()).thenReturn(false);
+		Path dirToBkp = Files.createTempDirectory("dirToBkp9");
+		Path replaced = Files.write(dirToBkp.resolve("REPLACED"), "replaced".getBytes());
+		Path kept = Files.write(dirToBkp.resolve("KEPT"), "kept".getBytes());
+		Path shared = Files.write(dirToBkp.resolve("SHARED"), "shared".getBytes());
+		Files.createLink(dirToBkp.resolve("OTHER_LINK"), shared);
+		
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(replaced, true);
+		helper.backupFile(kept);
+		helper.backupFile(shared, true);
+		helper.close();
+		
+		BackupStore store = helper.getStore();
+		assertThat(Files.isSameFile(store.get(HashUtils.sha256(replaced)), replaced), is(true));
+		assertThat(Files.isSameFile(store.get(HashUtils.sha256(kept)), kept), is(false));
+		assertThat(Files.isSameFile(store.get(HashUtils.sha256(shared)), shared), is(false));
+	}
+	
+	@Test
+	public void linkedObjectsChangedInPlaceAreNeitherReusedNorRestored() throws IOException {
+		when(conf.isBackupCompressed()).thenReturn(false);
+		Path dirToBkp = Files.createTempDirectory("dirToBkp10");
+		Path replaced = Files.write(dirToBkp.resolve("REPLACED"), "replaced".getBytes());
+		String hash = HashUtils.sha256(replaced);
+		
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(replaced, true);
+		helper.close();
+		// the target was not replaced after all, but written in place
+		Files.write(replaced, "changed!".getBytes());
 		
-		new BackupHelper(conf).backupFile(parentdirfile1);
-		Path bkp = PathUtils.get(conf.getBackupDir(), parentdirfile1);
-		assertThat(exists(bkp), is(true));
+		BackupStore store = helper.getStore();
+		try {
+			store.open(hash);
+			fail();
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage().contains("was changed"), is(true));
+		}
+		
+		Path same = Files.write(dirToBkp.resolve("SAME"), "replaced".getBytes());
+		assertThat(store.put(same), is(hash));
+		assertThat(Files.isSameFile(store.get(hash), replaced), is(false));
+		assertThat(content(helper, hash), is("replaced"));
+	}
+	
+	@Test
+	public void missingFileIsRecordedAsAdded() throws IOException {
+		Path dirToBkp = Files.createTempDirectory("dirToBkp8");
+		Path added = dirToBkp.resolve("ADDED");
+		
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(added);
+		helper.backupFileOrDir(dirToBkp.resolve("NOT_DELETED"));
+		helper.close();
+		
+		List<Entry> entries = helper.getRun().load();
+		assertThat(entries.size(), is(1));
+		assertThat(entries.get(0).getKind(), is(Kind.ADDED));
+		assertThat(entries.get(0).getPath(), is(added));
 	}
 	
 	@Test
@@ -113,24 +198,131 @@ public class BackupHelperTest {
 		Path parentdirfile2 = createTempFile(subDir1, "FILE_2", ".tmp");
 		Path parentdirfile3 = createTempFile(subDir3, "FILE_3", ".tmp");
 		
-		new BackupHelper(conf).backupFileOrDir(dirToBkp);
-		
-		Path bkp = PathUtils.get(conf.getBackupDir(), dirToBkp);
-		assertThat(exists(bkp), is(true));
-		assertThat(exists(PathUtils.get(bkp, parentdirfile1.getFileName())), is(true));
-		assertThat(exists(PathUtils.get(bkp, subDir1.getFileName())), is(true));
-		assertThat(exists(PathUtils.get(bkp, subDir2.getFileName())), is(true));
-		
-		assertThat(exists(PathUtils.get(
-				PathUtils.get(bkp, subDir1.getFileName()),
-				parentdirfile2.getFileName())), is(true));
-		assertThat(exists(PathUtils.get(
-				PathUtils.get(bkp, subDir1.getFileName()),
-				subDir3.getFileName())), is(true));
-		assertThat(
-				exists(PathUtils.get(PathUtils.get(
-						PathUtils.get(bkp, subDir1.getFileName()),
-						subDir3.getFileName()), parentdirfile3.getFileName())),
-				is(true));	
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFileOrDir(dirToBkp);
+		helper.close();
+		
+		Set<Path> bkp = backedUp(helper);
+		assertThat(bkp, hasItem(dirToBkp));
+		assertThat(bkp, hasItem(parentdirfile1));
+		assertThat(bkp, hasItem(subDir1));
+		assertThat(bkp, hasItem(subDir2));
+		assertThat(bkp, hasItem(parentdirfile2));
+		assertThat(bkp, hasItem(subDir3));
+		assertThat(bkp, hasItem(parentdirfile3));
+	}
+	
+	@Test
+	public void sameContentIsStoredOnce() throws IOException {
+		Path dirToBkp = Files.createTempDirectory("dirToBkp5");
+		Path file1 = Files.write(dirToBkp.resolve("FILE_1"), "same".getBytes());
+		Path file2 = Files.write(dirToBkp.resolve("FILE_2"), "same".getBytes());
+		Path file3 = Files.write(dirToBkp.resolve("FILE_3"), "other".getBytes());
+		
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(file1);
+		helper.backupFile(file2);
+		helper.backupFile(file3);
+		helper.close();
+		
+		assertThat(helper.getRun().load().size(), is(3));
+		assertThat(helper.getStore().sizes().size(), is(2));
+	}
+	
+	@Test
+	public void keepOnlyTheLastExecutions() throws IOException {
+		when(conf.getBackupKeep()).thenReturn(1);
+		Path dirToBkp = Files.createTempDirectory("dirToBkp6");
+		Path file = Files.write(dirToBkp.resolve("FILE_1"), "old".getBytes());
+		
+		BackupHelper old = new BackupHelper(conf);
+		old.backupFile(file);
+		old.close();
+		old.getRun().getDir().resolve(BackupRun.MANIFEST).toFile().setLastModified(System.currentTimeMillis() - 60000);
+		
+		Path newer = conf.getBackupStoreDir().resolve("module/config_20140101000001");
+		when(conf.getBackupDir()).thenReturn(newer);
+		Files.write(file, "new".getBytes());
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(file);
+		helper.retain();
+		helper.close();
+		
+		assertThat(Files.exists(old.getRun().getDir()), is(false));
+		assertThat(Files.exists(helper.getRun().getDir()), is(true));
+		assertThat(helper.getStore().sizes().size(), is(1));
+		assertThat(content(helper, helper.getRun().load().get(0).getHash()), is("new"));
+	}
+	
+	@Test
+	public void limitTheTotalSize() throws IOException {
+		when(conf.getBackupMaxSize()).thenReturn(1L);
+		Path dirToBkp = Files.createTempDirectory("dirToBkp7");
+		Path file = Files.write(dirToBkp.resolve("FILE_1"), "old".getBytes());
+		
+		BackupHelper old = new BackupHelper(conf);
+		old.backupFile(file);
+		old.close();
+		old.getRun().getDir().resolve(BackupRun.MANIFEST).toFile().setLastModified(System.currentTimeMillis() - 60000);
+		
+		Path newer = conf.getBackupStoreDir().resolve("other/config_20140101000001");
+		when(conf.getBackupDir()).thenReturn(newer);
+		Files.write(file, "new".getBytes());
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(file);
+		helper.retain();
+		helper.close();
+		
+		// the backup of the current execution is always kept
+		assertThat(Files.exists(old.getRun().getDir()), is(false));
+		assertThat(helper.getRun().load().size(), is(1));
+		assertThat(helper.getStore().sizes().size(), is(1));
+	}
+	
+	@Test
+	public void nothingIsRemovedWhileOtherExecutionsTakeBackups() throws IOException {
+		when(conf.getBackupKeep()).thenReturn(1);
+		Path dirToBkp = Files.createTempDirectory("dirToBkp10");
+		Path file = Files.write(dirToBkp.resolve("FILE_1"), "old".getBytes());
+		
+		BackupHelper old = new BackupHelper(conf);
+		old.backupFile(file);
+		old.close();
+		old.getRun().getDir().resolve(BackupRun.MANIFEST).toFile().setLastModified(System.currentTimeMillis() - 60000);
+		
+		when(conf.getBackupDir()).thenReturn(conf.getBackupStoreDir().resolve("module/config_20140101000001"));
+		BackupHelper running = new BackupHelper(conf);
+		running.backupFile(Files.write(dirToBkp.resolve("FILE_2"), "running".getBytes()));
+		
+		when(conf.getBackupDir()).thenReturn(conf.getBackupStoreDir().resolve("module/config_20140101000002"));
+		Files.write(file, "new".getBytes());
+		BackupHelper helper = new BackupHelper(conf);
+		helper.backupFile(file);
+		helper.retain();
+		assertThat(Files.exists(old.getRun().getDir()), is(true));
+		assertThat(helper.getStore().sizes().size(), is(3));
+		
+		running.close();
+		running.getRun().getDir().resolve(BackupRun.MANIFEST).toFile().setLastModified(System.currentTimeMillis() - 30000);
+		helper.retain();
+		helper.close();
+		assertThat(Files.exists(old.getRun().getDir()), is(false));
+		assertThat(helper.getStore().sizes().size(), is(1));
+	}
+	
+	private Set<Path> backedUp(BackupHelper helper) {
+		return helper.getRun().load().stream().map(Entry::getPath).collect(Collectors.toSet());
+	}
+	
+	private String content(BackupHelper helper, String hash) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = helper.getStore().open(hash)) {
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+		return new String(out.toByteArray());
 	}
 }
@@ -36,7 +36,14 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -47,6 +54,132 @@ import org.junit.Test;
  */
 public class FileUtilsTest {
 	
+	@Test
+	public void find() throws IOException{
+		Path parentdir = Files.createTempDirectory("DIR");
+		Path parentdirhook = createTempFile(parentdir, "FILE", ".hook");
+		createTempFile(parentdir, "FILE", ".tmp");
+		Path subdir = Files.createTempDirectory(parentdir, "SUBDIR");
+		Path subdirhook = createTempFile(subdir, "SUBFILE", ".hook");
+		
+		Set<Path> hooks = FileUtils.find(parentdir, "*.hook");
+		
+		assertThat(hooks.size(), is(2));
+		assertThat(hooks, hasItem(parentdirhook));
+		assertThat(hooks, hasItem(subdirhook));
+		
+		FileUtils.delete(parentdir);
+	}
+	
+	@Test
+	public void sameContent() throws IOException{
+		Path dir = Files.createTempDirectory("DIR");
+		Path a = Files.write(dir.resolve("a.txt"), "content".getBytes());
+		Path b = Files.write(dir.resolve("b.txt"), "content".getBytes());
+		Path c = Files.write(dir.resolve("c.txt"), "CONTENT".getBytes());
+		Path d = Files.write(dir.resolve("d.txt"), "other content".getBytes());
+		
+		assertThat(FileUtils.sameContent(a, b), is(true));
+		assertThat(FileUtils.sameContent(a, c), is(false));
+		assertThat(FileUtils.sameContent(a, d), is(false));
+		assertThat(FileUtils.sameContent(a, dir.resolve("none.txt")), is(false));
+		assertThat(FileUtils.sameContent(a, dir), is(false));
+		assertThat(FileUtils.sameContent("content".getBytes(), a), is(true));
+		assertThat(FileUtils.sameContent("CONTENT".getBytes(), a), is(false));
+		
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void copyDoesNotRewriteSameContent() throws IOException{
+		Path source = Files.createTempDirectory("SRC");
+		Path target = Files.createTempDirectory("TGT");
+		Files.write(source.resolve("a.txt"), "content".getBytes());
+		Path copied = Files.write(target.resolve("a.txt"), "content".getBytes());
+		FileTime before = FileTime.fromMillis(1000);
+		Files.setLastModifiedTime(copied, before);
+		
+		FileUtils.copy(source, target);
+		
+		assertThat(Files.getLastModifiedTime(copied), is(before));
+		
+		FileUtils.delete(source);
+		FileUtils.delete(target);
+	}
+	
+	@Test
+	public void copyVisitorVerifiesTargetDirsOnce() throws IOException{
+		Path source = Files.createTempDirectory("SRC");
+		Path target = Files.createTempDirectory("TGT");
+		FileUtils.createDirectories(source.resolve("a/b"));
+		FileUtils.createDirectories(source.resolve("e"));
+		Files.write(source.resolve("a/b/f.txt"), "content".getBytes());
+		
+		// already verified by a previous visitor of the same run
+		Set<Path> targetDirs = new HashSet<>(Arrays.asList(target.resolve("e")));
+		CopyVisitor visitor = new CopyVisitor(source, target, "*", targetDirs);
+		Files.walkFileTree(source, visitor);
+		
+		assertThat(exists(target.resolve("a/b/f.txt")), is(true));
+		assertThat(exists(target.resolve("e")), is(false));
+		assertThat(visitor.getTargetDirs(), is(new HashSet<>(Arrays.asList(target, target.resolve("a"), target.resolve("a/b"), target.resolve("e")))));
+		
+		FileUtils.delete(source);
+		FileUtils.delete(target);
+	}
+	
+	@Test
+	public void copyFileByTransfer() throws IOException{
+		Path dir = Files.createTempDirectory("DIR");
+		byte[] content = new byte[3 * 1024 * 1024 + 7];
+		new Random(1).nextBytes(content);
+		Path source = Files.write(dir.resolve("big.war"), content);
+		Path target = Files.write(dir.resolve("target.war"), "old".getBytes());
+		boolean posix = Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class);
+		if(posix) {
+			Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("rwxr-x---"));
+		}
+		
+		FileUtils.copyFile(source, target, 1024);
+		
+		assertThat(Files.readAllBytes(target), is(content));
+		if(posix) {
+			assertThat(Files.getPosixFilePermissions(target), is(PosixFilePermissions.fromString("rwxr-x---")));
+		}
+		
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void linkOrCopyKeepsPreviousContentOnReplace() throws IOException{
+		Path dir = Files.createTempDirectory("DIR");
+		Path target = Files.write(dir.resolve("target.xml"), "old".getBytes());
+		Path bkp = dir.resolve("target.xml.bkp");
+		
+		assertThat(FileUtils.linkOrCopy(target, bkp, FileUtils.TRANSFER_THRESHOLD), is(true));
+		assertThat(Files.isSameFile(target, bkp), is(true));
+		
+		new AtomicWriter(AtomicWriter.Fsync.NONE, FileUtils.TRANSFER_THRESHOLD).write("new".getBytes(), target);
+		assertThat(new String(Files.readAllBytes(target)), is("new"));
+		assertThat(new String(Files.readAllBytes(bkp)), is("old"));
+		
+		FileUtils.delete(dir);
+	}
+	
+	@Test
+	public void linkOrCopyCopiesSymbolicLinks() throws IOException{
+		Path dir = Files.createTempDirectory("DIR");
+		Path file = Files.write(dir.resolve("file.xml"), "content".getBytes());
+		Path link = Files.createSymbolicLink(dir.resolve("link.xml"), file);
+		Path bkp = dir.resolve("link.xml.bkp");
+		
+		assertThat(FileUtils.linkOrCopy(link, bkp, FileUtils.TRANSFER_THRESHOLD), is(false));
+		assertThat(Files.isSymbolicLink(bkp), is(false));
+		assertThat(new String(Files.readAllBytes(bkp)), is("content"));
+		
+		FileUtils.delete(dir);
+	}
+	
 	@Test
 	public void deleteFile() throws IOException{
 		Path file = createTempFile("FILE", ".tmp");
@@ -0,0 +1,120 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2014 scd4j scd4j.tools@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.datamaio.scd4j.util.io;
+
+import static java.nio.file.attribute.PosixFilePermissions.fromString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author Fernando Rubbo
+ */
+public class PosixUtilsTest {
+	
+	@Test
+	public void octalModes() {
+		assertThat(permissions("755", "---------"), is(fromString("rwxr-xr-x")));
+		assertThat(permissions("0640", "rwxrwxrwx"), is(fromString("rw-r-----")));
+		assertThat(permissions("7", "rwxrwxrwx"), is(fromString("------rwx")));
+	}
+	
+	@Test
+	public void symbolicModes() {
+		assertThat(permissions("u+x", "rw-r--r--"), is(fromString("rwxr--r--")));
+		assertThat(permissions("go-w,a+r", "rw-rw-rw-"), is(fromString("rw-r--r--")));
+		assertThat(permissions("g=rx", "rw-rw-rw-"), is(fromString("rw-r-xrw-")));
+		assertThat(permissions("o=", "rwxrwxrwx"), is(fromString("rwxrwx---")));
+		assertThat(permissions("a+X", "rw-r--r--"), is(fromString("rw-r--r--")));
+		assertThat(permissions("a+X", "rwxr--r--"), is(fromString("rwxr-xr-x")));
+		assertThat(permissions("u-w+x", "rw-------"), is(fromString("r-x------")));
+	}
+	
+	@Test
+	public void unsupportedModes() {
+		for (String mode : new String[]{"+x", "4755", "u+s", "g=u", "abc"}) {
+			try {
+				permissions(mode, "rw-r--r--");
+				fail(mode + " must not be supported");
+			} catch (IllegalArgumentException e) {
+				// the command is run instead
+			}
+		}
+	}
+	
+	@Test
+	public void chmodRecursive() throws Exception {
+		Path dir = Files.createTempDirectory("DIR");
+		if(!Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class)) {
+			return;
+		}
+		Path file = Files.createFile(dir.resolve("file.sh"));
+		Path sub = Files.createDirectory(dir.resolve("sub"));
+		Path subFile = Files.createFile(sub.resolve("file.txt"));
+		Path outside = Files.createTempFile("OUTSIDE", ".txt");
+		Files.setPosixFilePermissions(outside, fromString("rw-------"));
+		Files.createSymbolicLink(dir.resolve("link"), outside);
+		
+		PosixUtils.chmod("750", dir, true);
+		
+		assertThat(Files.getPosixFilePermissions(dir), is(fromString("rwxr-x---")));
+		assertThat(Files.getPosixFilePermissions(file), is(fromString("rwxr-x---")));
+		assertThat(Files.getPosixFilePermissions(sub), is(fromString("rwxr-x---")));
+		assertThat(Files.getPosixFilePermissions(subFile), is(fromString("rwxr-x---")));
+		// links are not followed
+		assertThat(Files.getPosixFilePermissions(outside), is(fromString("rw-------")));
+		
+		FileUtils.delete(dir);
+		Files.delete(outside);
+	}
+	
+	@Test
+	public void chownToTheCurrentOwner() throws Exception {
+		Path dir = Files.createTempDirectory("DIR");
+		if(!Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class)) {
+			return;
+		}
+		Path file = Files.createFile(dir.resolve("file.txt"));
+		UserPrincipal owner = Files.getOwner(dir);
+		
+		PosixUtils.chown(owner.getName(), null, dir, true);
+		
+		assertThat(Files.getOwner(file), is(owner));
+		FileUtils.delete(dir);
+	}
+	
+	private Set<PosixFilePermission> permissions(String mode, String current) {
+		return PosixUtils.permissions(mode, fromString(current), false);
+	}
+}